@@ -0,0 +1,28 @@
+package data_structures.benchmark;
+
+import java.util.Random;
+
+/* Key generation shared by the benchmarks */
+final class BenchmarkKeys {
+
+	private BenchmarkKeys() {
+	}
+
+  // Returns 0..n-1 permuted in a predictable manner (based on the seed),
+  // same shuffle as Main.permute
+	static int[] permutation(int n, long seed) {
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = i;
+		}
+
+		Random random = new Random(seed);
+		for (int i = 0; i < n; i++) {
+			int r = random.nextInt(n);
+			int swapped = keys[i];
+			keys[i] = keys[r];
+			keys[r] = swapped;
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,63 @@
+package data_structures.benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the benchmark suites once per thread count, since JMH fixes the
+ * number of threads per run rather than per @Param.
+ *
+ *   benchmark_data_structures <threads> [regexp] [param=value ...]
+ *
+ * e.g. "1,2,4,8 SortedBenchmark dataStructure=lfl,lft keyRange=1024"
+ *
+ * "mvn -B package" in benchmarks/ builds it as target/benchmarks.jar,
+ * run with "java -jar target/benchmarks.jar <threads> ...".
+ */
+public class BenchmarkRunner {
+
+	private static void exitWithError() {
+		System.out.println("benchmark_data_structures <threads> [regexp] [param=value ...]");
+		System.out.println("  where:");
+		System.out.println("    <threads> is a comma separated list of numbers > 0");
+		System.out.println("    [regexp] selects the benchmarks to run (default: all)");
+		System.out.println("    [param=value] overrides a @Param, values separated by commas");
+		System.exit(1);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		if (args.length < 1) {
+			exitWithError();
+		}
+
+		String[] threads = args[0].split(",");
+		String include = "data_structures.benchmark.";
+		int firstParam = 1;
+		if (args.length > 1 && args[1].indexOf('=') < 0) {
+			include += args[1];
+			firstParam = 2;
+		}
+
+		for (int i = 0; i < threads.length; i++) {
+			int nrThreads = Integer.parseInt(threads[i]);
+			if (nrThreads < 1) {
+				exitWithError();
+			}
+
+			OptionsBuilder builder = new OptionsBuilder();
+			builder.include(include).threads(nrThreads);
+			for (int j = firstParam; j < args.length; j++) {
+				int split = args[j].indexOf('=');
+				if (split < 0) {
+					exitWithError();
+				}
+				builder.param(args[j].substring(0, split), args[j].substring(split + 1).split(","));
+			}
+
+			Options options = builder.build();
+			new Runner(options).run();
+		}
+	}
+}
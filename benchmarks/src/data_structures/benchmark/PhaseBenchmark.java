@@ -0,0 +1,114 @@
+package data_structures.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import data_structures.IntSorted;
+import data_structures.Main;
+
+/*
+ * The add and remove phases of Main, measured with JMH: every thread adds
+ * (or removes) its own slice of a permutation of 0..nrItems-1. Unlike Main,
+ * each phase is repeated on a fresh structure, so the JIT is warm and the
+ * result is averaged over many runs.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class PhaseBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Keys {
+		@Param({"cgl", "cgt", "fgl", "fgt", "lfl", "lft", "lfsl", "lzl", "avl", "ohl", "oht", "fcl", "fct", "lfh", "scgl", "scgt", "cgul", "fgul", "blt", "icgl", "icgt", "ifgl", "ifgt", "ilfl", "ilft"})
+		public String dataStructure;
+
+		@Param({"16384"})
+		public int nrItems;
+
+		int[] itemsToAdd;
+		int[] itemsToRemove;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			itemsToAdd = BenchmarkKeys.permutation(nrItems, nrItems);
+			itemsToRemove = BenchmarkKeys.permutation(nrItems, nrItems + 1);
+		}
+
+		IntSorted create() {
+			IntSorted sorted = Main.createIntSorted(dataStructure);
+			if (sorted == null) {
+				throw new IllegalArgumentException("unknown data structure: " + dataStructure);
+			}
+			return sorted;
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Empty {
+		IntSorted sorted;
+
+		@Setup(Level.Iteration)
+		public void setUp(Keys keys) {
+			sorted = keys.create();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Full {
+		IntSorted sorted;
+
+		@Setup(Level.Iteration)
+		public void setUp(Keys keys) {
+			sorted = keys.create();
+			for (int i = 0; i < keys.nrItems; i++) {
+				sorted.add(keys.itemsToAdd[i]);
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Slice {
+		int startIndex;
+		int nrIterations;
+
+		@Setup(Level.Trial)
+		public void setUp(Keys keys, BenchmarkParams benchmarkParams, ThreadParams threadParams) {
+			int nrThreads = benchmarkParams.getThreads();
+			if (keys.nrItems % nrThreads != 0) {
+				throw new IllegalArgumentException("nrItems should be divisible by the thread count");
+			}
+			nrIterations = keys.nrItems / nrThreads;
+			startIndex = nrIterations * threadParams.getThreadIndex();
+		}
+	}
+
+	@Benchmark
+	public void add(Keys keys, Empty empty, Slice slice) {
+		for (int i = slice.startIndex; i < slice.startIndex + slice.nrIterations; i++) {
+			empty.sorted.add(keys.itemsToAdd[i]);
+		}
+	}
+
+	@Benchmark
+	public void remove(Keys keys, Full full, Slice slice) {
+		for (int i = slice.startIndex; i < slice.startIndex + slice.nrIterations; i++) {
+			full.sorted.remove(keys.itemsToRemove[i]);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package data_structures.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data_structures.IntSorted;
+import data_structures.Main;
+
+/*
+ * Steady-state benchmark: the structure is pre-populated with half of the
+ * key range, after which every benchmark thread runs a random mix of
+ * operations on uniformly drawn keys. Reports ops/sec (Throughput) and the
+ * per-operation latency distribution (SampleTime, which includes p50..p99.99).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SortedBenchmark {
+
+	@Param({"cgl", "cgt", "fgl", "fgt", "lfl", "lft", "lfsl", "lzl", "avl", "ohl", "oht", "fcl", "fct", "lfh", "scgl", "scgt", "cgul", "fgul", "blt", "icgl", "icgt", "ifgl", "ifgt", "ilfl", "ilft"})
+	public String dataStructure;
+
+	@Param({"1024", "65536"})
+	public int keyRange;
+
+	// Operation mix as <add>/<remove>/<contains> percentages
+	@Param({"50/50/0", "10/10/80"})
+	public String mix;
+
+	IntSorted sorted;
+	int addPercent;
+	int removePercent;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		sorted = Main.createIntSorted(dataStructure);
+		if (sorted == null) {
+			throw new IllegalArgumentException("unknown data structure: " + dataStructure);
+		}
+
+		String[] parts = mix.split("/");
+		if (parts.length != 3 || Integer.parseInt(parts[0]) + Integer.parseInt(parts[1]) + Integer.parseInt(parts[2]) != 100) {
+			throw new IllegalArgumentException("mix should be <add>/<remove>/<contains> and add up to 100: " + mix);
+		}
+		addPercent = Integer.parseInt(parts[0]);
+		removePercent = Integer.parseInt(parts[1]);
+
+		// Pre-populate with every other key, inserted in random order so the
+		// unbalanced trees do not degenerate into lists.
+		int[] keys = BenchmarkKeys.permutation(keyRange / 2, keyRange);
+		for (int i = 0; i < keys.length; i++) {
+			sorted.add(keys[i] * 2);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		Random random;
+
+		@Setup(Level.Iteration)
+		public void setUp() {
+			random = new Random(Thread.currentThread().getId());
+		}
+	}
+
+	@Benchmark
+	public boolean mixed(ThreadState state) {
+		int key = state.random.nextInt(keyRange);
+		int op = state.random.nextInt(100);
+		if (op < addPercent) {
+			sorted.add(key);
+			return true;
+		} else if (op < addPercent + removePercent) {
+			sorted.remove(key);
+			return true;
+		}
+		// returned so JMH keeps the lookup alive
+		return sorted.contains(key);
+	}
+}
@@ -0,0 +1,53 @@
+package data_structures;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* Lets the int driver run a Sorted<Integer>; every call boxes its key */
+public class BoxedIntSorted implements IntSorted {
+	private final Sorted<Integer> sorted;
+
+	public BoxedIntSorted(Sorted<Integer> sorted) {
+		this.sorted = sorted;
+	}
+
+	public void add(int key) {
+		sorted.add(key);
+	}
+
+	public void remove(int key) {
+		sorted.remove(key);
+	}
+
+	public boolean contains(int key) {
+		return sorted.contains(key);
+	}
+
+	public int size() {
+		return sorted.size();
+	}
+
+	/* The wrapped structure, for callers that look for more than IntSorted */
+	public Sorted<Integer> unwrap() {
+		return sorted;
+	}
+
+	public void addAll(int[] keys) {
+		sorted.addAll(box(keys));
+	}
+
+	public void removeAll(int[] keys) {
+		sorted.removeAll(box(keys));
+	}
+
+	private static List<Integer> box(int[] keys) {
+		List<Integer> boxed = new ArrayList<Integer>(keys.length);
+		for (int key : keys)
+			boxed.add(key);
+		return boxed;
+	}
+
+	public String toString() {
+		return sorted.toString();
+	}
+}
@@ -0,0 +1,67 @@
+package data_structures;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/* ExactSizeSorted for int keys */
+public class ExactSizeIntSorted implements IntSorted {
+	private final IntSorted sorted;
+	private final ReadWriteLock gate = new ReentrantReadWriteLock();
+
+	public ExactSizeIntSorted(IntSorted sorted) {
+		this.sorted = sorted;
+	}
+
+	public void add(int key) {
+		gate.readLock().lock();
+		try {
+			sorted.add(key);
+		} finally {
+			gate.readLock().unlock();
+		}
+	}
+
+	public void remove(int key) {
+		gate.readLock().lock();
+		try {
+			sorted.remove(key);
+		} finally {
+			gate.readLock().unlock();
+		}
+	}
+
+	public boolean contains(int key) {
+		return sorted.contains(key);
+	}
+
+	public void addAll(int[] keys) {
+		gate.readLock().lock();
+		try {
+			sorted.addAll(keys);
+		} finally {
+			gate.readLock().unlock();
+		}
+	}
+
+	public void removeAll(int[] keys) {
+		gate.readLock().lock();
+		try {
+			sorted.removeAll(keys);
+		} finally {
+			gate.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		gate.writeLock().lock();
+		try {
+			return sorted.size();
+		} finally {
+			gate.writeLock().unlock();
+		}
+	}
+
+	public String toString() {
+		return sorted.toString();
+	}
+}
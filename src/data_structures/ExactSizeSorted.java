@@ -0,0 +1,74 @@
+package data_structures;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Exact size mode for any Sorted: adds and removes run under the shared side
+ * of a read-write lock, size() takes the exclusive side. With no update in
+ * flight the wrapped counter is exact, so size() is linearizable. Lookups
+ * pass straight through; updates pay for a shared lock word and wait while
+ * a size() is running.
+ */
+public class ExactSizeSorted<T extends Comparable<T>> implements Sorted<T> {
+	private final Sorted<T> sorted;
+	private final ReadWriteLock gate = new ReentrantReadWriteLock();
+
+	public ExactSizeSorted(Sorted<T> sorted) {
+		this.sorted = sorted;
+	}
+
+	public void add(T t) {
+		gate.readLock().lock();
+		try {
+			sorted.add(t);
+		} finally {
+			gate.readLock().unlock();
+		}
+	}
+
+	public void remove(T t) {
+		gate.readLock().lock();
+		try {
+			sorted.remove(t);
+		} finally {
+			gate.readLock().unlock();
+		}
+	}
+
+	public boolean contains(T t) {
+		return sorted.contains(t);
+	}
+
+	public void addAll(Collection<T> ts) {
+		gate.readLock().lock();
+		try {
+			sorted.addAll(ts);
+		} finally {
+			gate.readLock().unlock();
+		}
+	}
+
+	public void removeAll(Collection<T> ts) {
+		gate.readLock().lock();
+		try {
+			sorted.removeAll(ts);
+		} finally {
+			gate.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		gate.writeLock().lock();
+		try {
+			return sorted.size();
+		} finally {
+			gate.writeLock().unlock();
+		}
+	}
+
+	public String toString() {
+		return sorted.toString();
+	}
+}
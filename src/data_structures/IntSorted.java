@@ -0,0 +1,22 @@
+package data_structures;
+
+/* Sorted specialized for int keys, so callers never box */
+public interface IntSorted {
+	public void add(int key);
+	public void remove(int key);
+	public boolean contains(int key);
+
+	/* Number of keys, in O(1); see Sorted.size() */
+	public int size();
+
+	/* Same as add (remove) for every key; implementations may sort the batch and merge it in one pass */
+	public default void addAll(int[] keys) {
+		for (int key : keys)
+			add(key);
+	}
+
+	public default void removeAll(int[] keys) {
+		for (int key : keys)
+			remove(key);
+	}
+}
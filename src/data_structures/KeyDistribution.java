@@ -0,0 +1,142 @@
+package data_structures;
+
+import java.util.Random;
+
+/*
+ * Draws the keys of a generated workload from 0..keyRange-1. Each worker
+ * gets its own instance from forThread(), so stateful distributions need
+ * no synchronization while the work data is generated.
+ */
+abstract class KeyDistribution {
+	static final String UNIFORM = "uniform";
+	static final String ZIPF = "zipf";
+	static final String HOTSPOT = "hotspot";
+	static final String SEQUENTIAL = "sequential";
+
+	final int keyRange;
+
+	KeyDistribution(int keyRange) {
+		this.keyRange = keyRange;
+	}
+
+	abstract int next(Random random);
+
+	/* The distribution to use for thread id out of nrThreads */
+	KeyDistribution forThread(int id, int nrThreads) {
+		return this;
+	}
+
+	/*
+	 * uniform, zipf[:<theta>] (default 0.99), hotspot[:<hotKeys>:<hotOps>]
+	 * (default 0.2:0.8, the fraction of the keys that gets that fraction of
+	 * the operations) or sequential.
+	 */
+	static KeyDistribution parse(String spec, int keyRange) {
+		String[] parts = spec.split(":");
+		if (parts[0].equals(UNIFORM) && parts.length == 1) {
+			return new Uniform(keyRange);
+		} else if (parts[0].equals(ZIPF) && parts.length <= 2) {
+			return new Zipfian(keyRange, parts.length == 2 ? Double.parseDouble(parts[1]) : 0.99);
+		} else if (parts[0].equals(HOTSPOT) && (parts.length == 1 || parts.length == 3)) {
+			return parts.length == 3
+					? new Hotspot(keyRange, Double.parseDouble(parts[1]), Double.parseDouble(parts[2]))
+					: new Hotspot(keyRange, 0.2, 0.8);
+		} else if (parts[0].equals(SEQUENTIAL) && parts.length == 1) {
+			return new Sequential(keyRange, 0);
+		}
+		throw new IllegalArgumentException("unknown key distribution: " + spec);
+	}
+
+	static class Uniform extends KeyDistribution {
+		Uniform(int keyRange) {
+			super(keyRange);
+		}
+
+		int next(Random random) {
+			return random.nextInt(keyRange);
+		}
+	}
+
+	/*
+	 * Key k is drawn with a probability proportional to 1 / (k + 1)^theta,
+	 * so the smallest keys are the hottest. Uses the method of Gray et al.,
+	 * "Quickly generating billion-record synthetic databases", as YCSB does:
+	 * one O(keyRange) sum up front, then O(1) per key.
+	 */
+	static class Zipfian extends KeyDistribution {
+		private final double theta;
+		private final double zetaN;
+		private final double alpha;
+		private final double eta;
+
+		Zipfian(int keyRange, double theta) {
+			super(keyRange);
+			if (!(theta > 0 && theta < 1)) {
+				throw new IllegalArgumentException("zipf theta should lie between 0 and 1: " + theta);
+			}
+			this.theta = theta;
+			double zeta = 0;
+			for (int i = 1; i <= keyRange; i++) {
+				zeta += 1 / Math.pow(i, theta);
+			}
+			this.zetaN = zeta;
+			this.alpha = 1 / (1 - theta);
+			double zeta2 = 1 + Math.pow(0.5, theta);
+			this.eta = (1 - Math.pow(2.0 / keyRange, 1 - theta)) / (1 - zeta2 / zetaN);
+		}
+
+		int next(Random random) {
+			double u = random.nextDouble();
+			double uz = u * zetaN;
+			if (uz < 1) {
+				return 0;
+			}
+			if (uz < 1 + Math.pow(0.5, theta)) {
+				return Math.min(1, keyRange - 1);
+			}
+			return Math.min(keyRange - 1, (int) (keyRange * Math.pow(eta * u - eta + 1, alpha)));
+		}
+	}
+
+	/* The lowest hotKeys fraction of the range gets hotOps of the operations, the rest is uniform */
+	static class Hotspot extends KeyDistribution {
+		private final int nrHotKeys;
+		private final double hotOps;
+
+		Hotspot(int keyRange, double hotKeys, double hotOps) {
+			super(keyRange);
+			if (!(hotKeys > 0 && hotKeys <= 1 && hotOps >= 0 && hotOps <= 1)) {
+				throw new IllegalArgumentException("hotspot fractions should lie between 0 and 1");
+			}
+			this.nrHotKeys = Math.max(1, (int) (keyRange * hotKeys));
+			this.hotOps = hotOps;
+		}
+
+		int next(Random random) {
+			if (nrHotKeys == keyRange || random.nextDouble() < hotOps) {
+				return random.nextInt(nrHotKeys);
+			}
+			return nrHotKeys + random.nextInt(keyRange - nrHotKeys);
+		}
+	}
+
+	/* Every thread walks the range in order, each from its own start, wrapping around */
+	static class Sequential extends KeyDistribution {
+		private int nextKey;
+
+		Sequential(int keyRange, int start) {
+			super(keyRange);
+			this.nextKey = start;
+		}
+
+		int next(Random random) {
+			int key = nextKey;
+			nextKey = key + 1 == keyRange ? 0 : key + 1;
+			return key;
+		}
+
+		KeyDistribution forThread(int id, int nrThreads) {
+			return new Sequential(keyRange, (int) ((long) keyRange * id / nrThreads));
+		}
+	}
+}
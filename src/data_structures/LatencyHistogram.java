@@ -0,0 +1,88 @@
+package data_structures;
+
+/*
+ * Fixed-size histogram of latencies in nanoseconds, with buckets laid out
+ * as in HdrHistogram: values below SUB_BUCKETS get a bucket each, above
+ * that every power of two is split into SUB_BUCKETS linear buckets. A
+ * recorded value is thus off by at most 1/SUB_BUCKETS (about 3%), and
+ * recording is a few shifts and one array increment. Not thread-safe:
+ * every worker records into its own histograms, which are merged after
+ * the run.
+ */
+class LatencyHistogram {
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	// one group of sub-buckets per exponent from SUB_BITS to 62, plus the exact low values
+	private static final int NR_BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final long[] counts = new long[NR_BUCKETS];
+	private long count;
+	private long sum;
+	private long max;
+
+	void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts[index(nanos)]++;
+		count++;
+		sum += nanos;
+		if (nanos > max)
+			max = nanos;
+	}
+
+	void add(LatencyHistogram other) {
+		for (int i = 0; i < NR_BUCKETS; i++)
+			counts[i] += other.counts[i];
+		count += other.count;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+
+	long count() {
+		return count;
+	}
+
+	long sum() {
+		return sum;
+	}
+
+	long max() {
+		return max;
+	}
+
+	double mean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/* The smallest recorded value that at least percentile percent of the values do not exceed, rounded up to its bucket */
+	long percentile(double percentile) {
+		if (count == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < NR_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(highest(i), max);
+		}
+		return max;
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BITS;
+		// value >>> shift lies in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/* largest value that lands in bucket i */
+	private static long highest(int i) {
+		if (i < SUB_BUCKETS)
+			return i;
+		int shift = i / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + i % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -1,14 +1,44 @@
 package data_structures;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
+import javax.management.JMException;
+
+import data_structures.implementation.BLinkTree;
 import data_structures.implementation.CoarseGrainedList;
 import data_structures.implementation.CoarseGrainedTree;
+import data_structures.implementation.CoarseGrainedUnrolledList;
+import data_structures.implementation.Contended;
+import data_structures.implementation.ContentionStats;
 import data_structures.implementation.FineGrainedList;
 import data_structures.implementation.FineGrainedTree;
+import data_structures.implementation.FineGrainedUnrolledList;
+import data_structures.implementation.FlatCombiningList;
+import data_structures.implementation.FlatCombiningTree;
+import data_structures.implementation.IntCoarseGrainedList;
+import data_structures.implementation.IntCoarseGrainedTree;
+import data_structures.implementation.IntFineGrainedList;
+import data_structures.implementation.IntFineGrainedTree;
+import data_structures.implementation.IntLockFreeList;
+import data_structures.implementation.IntLockFreeTree;
+import data_structures.implementation.LazyList;
+import data_structures.implementation.LockFreeHashSet;
 import data_structures.implementation.LockFreeList;
+import data_structures.implementation.LockFreeSkipList;
 import data_structures.implementation.LockFreeTree;
+import data_structures.implementation.OffHeapList;
+import data_structures.implementation.OffHeapTree;
+import data_structures.implementation.OptimisticAVLTree;
+import data_structures.implementation.ShardedSorted;
 
 public class Main {
 
@@ -18,6 +48,33 @@ public class Main {
 	private static final String FGT = "fgt";
 	private static final String LFL = "lfl";
 	private static final String LFT = "lft";
+	private static final String LFSL = "lfsl";
+	private static final String LZL = "lzl";
+	private static final String AVL = "avl";
+	private static final String OHL = "ohl";
+	private static final String OHT = "oht";
+	private static final String FCL = "fcl";
+	private static final String FCT = "fct";
+	private static final String LFH = "lfh";
+	private static final String SCGL = "scgl";
+	private static final String SCGT = "scgt";
+	private static final String CGUL = "cgul";
+	private static final String FGUL = "fgul";
+	private static final String BLT = "blt";
+	private static final String ICGL = "icgl";
+	private static final String ICGT = "icgt";
+	private static final String IFGL = "ifgl";
+	private static final String IFGT = "ifgt";
+	private static final String ILFL = "ilfl";
+	private static final String ILFT = "ilft";
+
+	// How the workers are run: one platform thread each, or as tasks on an executor
+	private static final String DRIVER_THREADS = "threads";
+	private static final String DRIVER_VIRTUAL = "virtual";
+	private static final String DRIVER_POOL = "pool:";
+
+	// Number of key ranges of the sharded data structures
+	private static final int NR_SHARDS = 16;
 
   // Compute a unique number from the three parameters
 	private static long computeSeed(int param1, int param2, int param3) {
@@ -75,78 +132,440 @@ public class Main {
 		}
 	}
 
-	private static void startThreads(Sorted<Integer> sorted, int nrThreads, int nrItems, int workTime, long seed, boolean doubles, boolean debug) throws InterruptedException {
+	private static void startThreads(IntSorted sorted, int nrThreads, int nrItems, int nrLookupRounds, int workTime, long seed, boolean doubles, boolean debug, String driver, boolean latency) throws InterruptedException {
 		int[] itemsToAdd = new int[nrItems];
 		int[] itemsToRemove = new int[nrItems];
 		createWorkData(itemsToAdd, itemsToRemove, seed, doubles);
 
 		WorkerThread[] workerThreads = new WorkerThread[nrThreads];
-		CyclicBarrier barrier = new CyclicBarrier(nrThreads);
+		CyclicBarrier barrier = driver.equals(DRIVER_THREADS) ? new CyclicBarrier(nrThreads) : null;
 
 		for (int i = 0; i < nrThreads; i++) {
-			workerThreads[i] = new WorkerThread(i, sorted, nrItems / nrThreads, itemsToAdd, itemsToRemove, workTime, barrier, debug);
+			workerThreads[i] = new WorkerThread(i, sorted, nrItems / nrThreads, itemsToAdd, itemsToRemove, nrLookupRounds, workTime, barrier, debug, latency);
 		}
 
-		long start = System.currentTimeMillis();
+		long start, end, lookupTime;
+		if (driver.equals(DRIVER_THREADS)) {
+			start = System.currentTimeMillis();
+			for (int i = 0; i < nrThreads; i++) {
+				workerThreads[i].start();
+			}
+
+			for (int i = 0; i < nrThreads; i++) {
+				workerThreads[i].join();
+			}
+			end = System.currentTimeMillis();
+			lookupTime = workerThreads[0].lookupPhaseEnd - workerThreads[0].lookupPhaseStart;
+		} else {
+			// The phases run one after the other, each with one task per worker.
+			// A pool can have fewer threads than workers, so a barrier would deadlock.
+			ExecutorService executor = createExecutor(driver);
+			try {
+				start = System.currentTimeMillis();
+				runPhase(executor, workerThreads, WorkerThread::addPhase);
+				if (debug) {
+					System.out.printf("Output after adding, before removing:\n%s\n", sorted.toString());
+				}
+				long lookupStart = System.currentTimeMillis();
+				if (nrLookupRounds > 0) {
+					runPhase(executor, workerThreads, WorkerThread::lookupPhase);
+				}
+				lookupTime = System.currentTimeMillis() - lookupStart;
+				runPhase(executor, workerThreads, WorkerThread::removePhase);
+				end = System.currentTimeMillis();
+			} finally {
+				executor.shutdown();
+			}
+		}
+
+		System.out.println("data structure after removal (should be empty):");
+		System.out.println(sorted);
+		System.out.printf("size: %d\n", sorted.size());
+		System.out.println();
+		System.out.printf("time: %d ms\n\n", end - start);
+		if (nrLookupRounds > 0) {
+			System.out.printf("lookup time: %d ms (%d lookups)\n\n", lookupTime, (long) nrItems * nrLookupRounds);
+		}
+		if (latency) {
+			printLatencies(workerThreads);
+		}
+	}
+
+	// Prefills the structure, then lets every thread run its slice of the mixed workload
+	private static void runWorkload(IntSorted sorted, Workload workload, int nrThreads, int nrItems, int workTime, long seed, boolean debug, String driver, boolean latency) throws InterruptedException {
+		byte[] ops = new byte[nrItems];
+		int[] keys = new int[nrItems];
 		for (int i = 0; i < nrThreads; i++) {
-			workerThreads[i].start();
+			workload.generate(i, nrThreads, seed, ops, keys);
 		}
 
+		// one batch, so the trees can build themselves balanced instead of taking every key on its own
+		sorted.addAll(workload.prefillKeys(seed));
+		if (debug) {
+			System.out.printf("Output after prefilling:\n%s\n", sorted.toString());
+		}
+
+		WorkerThread[] workerThreads = new WorkerThread[nrThreads];
 		for (int i = 0; i < nrThreads; i++) {
-			workerThreads[i].join();
+			workerThreads[i] = new WorkerThread(i, sorted, nrItems / nrThreads, ops, keys, workTime, latency);
+		}
+
+		long start = System.currentTimeMillis();
+		if (driver.equals(DRIVER_THREADS)) {
+			for (int i = 0; i < nrThreads; i++) {
+				workerThreads[i].start();
+			}
+			for (int i = 0; i < nrThreads; i++) {
+				workerThreads[i].join();
+			}
+		} else {
+			ExecutorService executor = createExecutor(driver);
+			try {
+				runPhase(executor, workerThreads, WorkerThread::mixedPhase);
+			} finally {
+				executor.shutdown();
+			}
 		}
 		long end = System.currentTimeMillis();
 
-		System.out.println("data structure after removal (should be empty):");
-		System.out.println(sorted);
+		if (debug) {
+			System.out.printf("Output after the workload:\n%s\n", sorted.toString());
+		}
+		System.out.printf("size: %d (prefilled with %d)\n", sorted.size(), workload.prefill);
 		System.out.println();
-		System.out.printf("time: %d ms\n\n", end - start);
+		System.out.printf("time: %d ms (%d operations, %d/%d/%d add/remove/contains)\n\n", end - start, nrItems,
+				workload.addPercent, workload.removePercent, 100 - workload.addPercent - workload.removePercent);
+		if (latency) {
+			printLatencies(workerThreads);
+		}
+	}
+
+	// Prefills the structure to nrItems keys, then measures its throughput at that size for duration seconds
+	private static void runDuration(IntSorted sorted, int nrThreads, int nrItems, int nrLookupRounds, int workTime, long seed, boolean debug, String driver, boolean latency, int duration, int warmup) throws InterruptedException {
+		// the workers add and remove odd keys, so the prefill is the even ones
+		int[] prefill = new int[nrItems];
+		for (int i = 0; i < nrItems; i++) {
+			prefill[i] = 2 * i;
+		}
+		// shuffled for the structures that take a batch key by key, the others sort it
+		permute(prefill, seed);
+		sorted.addAll(prefill);
+		int sizeBefore = sorted.size();
+		if (debug) {
+			System.out.printf("Output after prefilling:\n%s\n", sorted.toString());
+		}
+
+		WorkerThread[] workerThreads = new WorkerThread[nrThreads];
+		for (int i = 0; i < nrThreads; i++) {
+			workerThreads[i] = new WorkerThread(i, sorted, nrThreads, nrItems, nrLookupRounds, workTime, seed, latency);
+		}
+
+		ExecutorService executor = null;
+		List<Future<?>> results = new ArrayList<Future<?>>(nrThreads);
+		if (driver.equals(DRIVER_THREADS)) {
+			for (int i = 0; i < nrThreads; i++) {
+				workerThreads[i].start();
+			}
+		} else {
+			executor = createExecutor(driver);
+			for (WorkerThread workerThread : workerThreads) {
+				results.add(executor.submit(workerThread::durationPhase));
+			}
+		}
+
+		long start, end;
+		try {
+			Thread.sleep(warmup * 1000L);
+			start = System.nanoTime();
+			for (WorkerThread workerThread : workerThreads) {
+				workerThread.stage = WorkerThread.MEASURE;
+			}
+			Thread.sleep(duration * 1000L);
+			for (WorkerThread workerThread : workerThreads) {
+				workerThread.stage = WorkerThread.STOP;
+			}
+			end = System.nanoTime();
+
+			if (executor == null) {
+				for (WorkerThread workerThread : workerThreads) {
+					workerThread.join();
+				}
+			}
+			for (Future<?> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+
+		if (debug) {
+			System.out.printf("Output after the run:\n%s\n", sorted.toString());
+		}
+		System.out.printf("size: %d before, %d after\n", sizeBefore, sorted.size());
+		System.out.println();
+
+		long[] opCounts = new long[3];
+		double sum = 0, sumOfSquares = 0;
+		double[] throughputs = new double[nrThreads];
+		for (int i = 0; i < nrThreads; i++) {
+			long ops = 0;
+			for (int op = WorkerThread.ADD; op <= WorkerThread.REMOVE; op++) {
+				opCounts[op] += workerThreads[i].opCounts[op];
+				ops += workerThreads[i].opCounts[op];
+			}
+			throughputs[i] = ops * 1e9 / Math.max(1, workerThreads[i].phaseTimes[WorkerThread.ADD]);
+			sum += throughputs[i];
+			sumOfSquares += throughputs[i] * throughputs[i];
+		}
+		double seconds = (end - start) / 1e9;
+		System.out.printf("measured: %d ms after %d ms warmup\n", (end - start) / 1000000, warmup * 1000L);
+		System.out.printf("throughput: %.0f ops/s (%.0f adds/s, %.0f removes/s, %.0f lookups/s)\n",
+				(opCounts[WorkerThread.ADD] + opCounts[WorkerThread.LOOKUP] + opCounts[WorkerThread.REMOVE]) / seconds,
+				opCounts[WorkerThread.ADD] / seconds, opCounts[WorkerThread.REMOVE] / seconds, opCounts[WorkerThread.LOOKUP] / seconds);
+		for (int i = 0; i < nrThreads; i++) {
+			System.out.printf("  thread %d: %.0f ops/s\n", i, throughputs[i]);
+		}
+		System.out.printf("  fairness: Jain index %.3f\n\n", sumOfSquares == 0 ? 1 : sum * sum / (nrThreads * sumOfSquares));
+		if (latency) {
+			printLatencies(workerThreads);
+		}
 	}
 
-	private static void performWork(String dataStructure, int nrThreads, int nrItems, int workTime, long seed, boolean debug) throws InterruptedException {
-		Sorted<Integer> sorted = null;
+	private static final String[] PHASE_NAMES = { "add", "lookup", "remove" };
 
-		boolean doubles = true;
+	// Per-phase latency percentiles over all threads and per thread, and how evenly the threads progressed
+	private static void printLatencies(WorkerThread[] workerThreads) {
+		System.out.printf("%-14s %10s %9s %9s %9s %9s %9s %9s\n", "latency (us)", "count", "mean", "p50", "p90", "p99", "p99.9", "max");
+		for (int phase = WorkerThread.ADD; phase <= WorkerThread.REMOVE; phase++) {
+			LatencyHistogram all = new LatencyHistogram();
+			for (WorkerThread workerThread : workerThreads) {
+				all.add(workerThread.latencies[phase]);
+			}
+			// no lookup phase, or an operation the mix leaves out
+			if (all.count() == 0) {
+				continue;
+			}
+			printLatency(PHASE_NAMES[phase], all);
+			for (int i = 0; i < workerThreads.length; i++) {
+				printLatency("  thread " + i, workerThreads[i].latencies[phase]);
+			}
+
+			// Jain's index over the per-thread throughputs: 1 when all are equal, 1/n when one thread did all the work
+			long fastest = Long.MAX_VALUE, slowest = 0;
+			double sum = 0, sumOfSquares = 0;
+			for (WorkerThread workerThread : workerThreads) {
+				long time = Math.max(1, workerThread.phaseTimes[phase]);
+				fastest = Math.min(fastest, time);
+				slowest = Math.max(slowest, time);
+				double throughput = (double) workerThread.latencies[phase].count() / time;
+				sum += throughput;
+				sumOfSquares += throughput * throughput;
+			}
+			double fairness = sumOfSquares == 0 ? 1 : sum * sum / (workerThreads.length * sumOfSquares);
+			System.out.printf("  fairness: fastest thread %.1f ms, slowest %.1f ms (%.2fx), Jain index %.3f\n\n",
+					fastest / 1e6, slowest / 1e6, (double) slowest / fastest, fairness);
+		}
+	}
+
+	private static void printLatency(String label, LatencyHistogram histogram) {
+		System.out.printf("%-14s %10d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f\n", label, histogram.count(), histogram.mean() / 1000,
+				histogram.percentile(50) / 1000.0, histogram.percentile(90) / 1000.0, histogram.percentile(99) / 1000.0,
+				histogram.percentile(99.9) / 1000.0, histogram.max() / 1000.0);
+	}
+
+	private static ExecutorService createExecutor(String driver) {
+		if (driver.equals(DRIVER_VIRTUAL)) {
+			try {
+				// only there from Java 21 on, so it is looked up at run time
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				System.out.println("driver=virtual needs Java 21 or later");
+				System.exit(1);
+			}
+		}
+		return Executors.newFixedThreadPool(Integer.parseInt(driver.substring(DRIVER_POOL.length())));
+	}
+
+	// Runs one phase of every worker on the executor and waits for all of them
+	private static void runPhase(ExecutorService executor, WorkerThread[] workerThreads, Consumer<WorkerThread> phase) throws InterruptedException {
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(workerThreads.length);
+		for (WorkerThread workerThread : workerThreads) {
+			tasks.add(Executors.callable(() -> phase.accept(workerThread)));
+		}
+		for (Future<Object> result : executor.invokeAll(tasks)) {
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
 
+  // Creates the data structure for the given code, or returns null for an unknown code.
+  // Also used by the benchmark module, so every structure selectable here can be benchmarked.
+	public static Sorted<Integer> createSorted(String dataStructure) {
 		if (dataStructure.equals(CGL)) {
-			sorted = new CoarseGrainedList<Integer>();
+			return new CoarseGrainedList<Integer>();
 		} else if (dataStructure.equals(CGT)) {
-			sorted = new CoarseGrainedTree<Integer>();
+			return new CoarseGrainedTree<Integer>();
 		} else if (dataStructure.equals(FGL)) {
-			sorted = new FineGrainedList<Integer>();
+			return new FineGrainedList<Integer>();
 		} else if (dataStructure.equals(FGT)) {
-			sorted = new FineGrainedTree<Integer>();
+			return new FineGrainedTree<Integer>();
 		} else if (dataStructure.equals(LFL)) {
-			sorted = new LockFreeList<Integer>();
+			return new LockFreeList<Integer>();
 		} else if (dataStructure.equals(LFT)) {
-			sorted = new LockFreeTree<Integer>();
-			doubles = false;
-		} else {
+			return new LockFreeTree<Integer>();
+		} else if (dataStructure.equals(LFSL)) {
+			return new LockFreeSkipList<Integer>();
+		} else if (dataStructure.equals(LZL)) {
+			return new LazyList<Integer>();
+		} else if (dataStructure.equals(AVL)) {
+			return new OptimisticAVLTree<Integer>();
+		} else if (dataStructure.equals(OHL)) {
+			return new OffHeapList();
+		} else if (dataStructure.equals(OHT)) {
+			return new OffHeapTree();
+		} else if (dataStructure.equals(FCL)) {
+			return new FlatCombiningList<Integer>();
+		} else if (dataStructure.equals(FCT)) {
+			return new FlatCombiningTree<Integer>();
+		} else if (dataStructure.equals(LFH)) {
+			return new LockFreeHashSet<Integer>();
+		} else if (dataStructure.equals(SCGL)) {
+			return new ShardedSorted<Integer, CoarseGrainedList<Integer>>(CoarseGrainedList::new, NR_SHARDS);
+		} else if (dataStructure.equals(SCGT)) {
+			return new ShardedSorted<Integer, CoarseGrainedTree<Integer>>(CoarseGrainedTree::new, NR_SHARDS);
+		} else if (dataStructure.equals(CGUL)) {
+			return new CoarseGrainedUnrolledList<Integer>();
+		} else if (dataStructure.equals(FGUL)) {
+			return new FineGrainedUnrolledList<Integer>();
+		} else if (dataStructure.equals(BLT)) {
+			return new BLinkTree<Integer>();
+		}
+		return null;
+	}
+
+  // Creates the int data structure for the given code. The generic data structures are
+  // wrapped so they can be driven through the same interface; they box every key.
+	public static IntSorted createIntSorted(String dataStructure) {
+		if (dataStructure.equals(ICGL)) {
+			return new IntCoarseGrainedList();
+		} else if (dataStructure.equals(ICGT)) {
+			return new IntCoarseGrainedTree();
+		} else if (dataStructure.equals(IFGL)) {
+			return new IntFineGrainedList();
+		} else if (dataStructure.equals(IFGT)) {
+			return new IntFineGrainedTree();
+		} else if (dataStructure.equals(ILFL)) {
+			return new IntLockFreeList();
+		} else if (dataStructure.equals(ILFT)) {
+			return new IntLockFreeTree();
+		} else if (dataStructure.equals(OHL)) {
+			// the off-heap structures are int-keyed already, no boxing needed
+			return new OffHeapList();
+		} else if (dataStructure.equals(OHT)) {
+			return new OffHeapTree();
+		}
+
+		Sorted<Integer> sorted = createSorted(dataStructure);
+		return sorted == null ? null : new BoxedIntSorted(sorted);
+	}
+
+	private static void performWork(String dataStructure, int nrThreads, int nrItems, int nrLookupRounds, int workTime, long seed, boolean debug, String driver, boolean latency, Workload workload, int duration, int warmup) throws InterruptedException {
+		IntSorted sorted = createIntSorted(dataStructure);
+		if (sorted == null) {
 			exitWithError();
 		}
 
+		boolean doubles = !dataStructure.equals(LFT) && !dataStructure.equals(ILFT) && !dataStructure.equals(LFH) && !dataStructure.equals(BLT);
+
 		if (debug) {
     	    	    System.out.printf("Output before adding:\n%s\n", sorted.toString());
 		}
 
-		startThreads(sorted, nrThreads, nrItems, workTime, seed, doubles, debug);
+		// the contention counters can be watched over JMX while the run is going on
+		ContentionStats stats = contentionStats(sorted);
+		if (stats != null) {
+			try {
+				stats.register(dataStructure);
+			} catch (JMException e) {
+				System.out.printf("could not register the contention counters: %s\n", e.getMessage());
+			}
+		}
+
+		if (duration > 0) {
+			runDuration(sorted, nrThreads, nrItems, nrLookupRounds, workTime, seed, debug, driver, latency, duration, warmup);
+		} else if (workload != null) {
+			runWorkload(sorted, workload, nrThreads, nrItems, workTime, seed, debug, driver, latency);
+		} else {
+			startThreads(sorted, nrThreads, nrItems, nrLookupRounds, workTime, seed, doubles, debug, driver, latency);
+		}
+
+		if (stats != null) {
+			System.out.printf("contention: %s\n", stats);
+		}
+	}
+
+	private static ContentionStats contentionStats(IntSorted sorted) {
+		Object structure = sorted instanceof BoxedIntSorted ? ((BoxedIntSorted) sorted).unwrap() : sorted;
+		return structure instanceof Contended ? ((Contended) structure).contentionStats() : null;
 	}
 
 	private static void exitWithError() {
-		System.out .println("test_data_structures <data_structure> <nrThreads> <nrItems> <workTime> [debug]");
+		System.out .println("test_data_structures <data_structure> <nrThreads> <nrItems> <workTime> [debug] [lookups=<n>] [driver=<driver>] [latency]");
+		System.out.println("                     [mix=<a>/<r>/<c> [keys=<distribution>] [range=<n>] [prefill=<n>]]");
+		System.out.println("                     [duration=<s> [warmup=<s>]]");
 		System.out.println("  where:");
-		System.out.printf("    <data_structure> in {%s, %s, %s, %s, %s, %s}\n", CGL, CGT, FGL, FGT, LFL, LFT);
+		System.out.printf("    <data_structure> in {%s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s,\n", CGL, CGT, FGL, FGT, LFL, LFT, LFSL, LZL, AVL, OHL, OHT, FCL, FCT, LFH);
+		System.out.printf("                      %s, %s, %s, %s, %s}\n", SCGL, SCGT, CGUL, FGUL, BLT);
+		System.out.printf("                     or the int variants {%s, %s, %s, %s, %s, %s}\n", ICGL, ICGT, IFGL, IFGT, ILFL, ILFT);
 		System.out.println("    <nrThreads> is a number > 0");
 		System.out.println("    <nrItems> is a number > 0");
 		System.out.println("    <workTime> is a number >= 0 (micro seconds)");
 		System.out.println("    [debug] can be omitted. If added as the last parameter,");
 		System.out.println("            the output of Sorted.toString() will be printed ");
 		System.out.println("            after adding and before removing the numbers.");
+		System.out.println("    [lookups=<n>] adds a lookup phase between adding and removing,");
+		System.out.println("            in which every thread calls contains() <n> times");
+		System.out.println("            for each of its numbers.");
+		System.out.printf("    [driver=<driver>] runs the <nrThreads> workers as: %s (default),\n", DRIVER_THREADS);
+		System.out.println("            one platform thread each, synchronized by a barrier;");
+		System.out.printf("            %s<n>, tasks on a pool of <n> threads, one phase at a time;\n", DRIVER_POOL);
+		System.out.printf("            %s, tasks on virtual threads (Java 21+), one phase at a time.\n", DRIVER_VIRTUAL);
+		System.out.println("    [latency] times every operation and prints, per phase, latency");
+		System.out.println("            percentiles over all threads and per thread, and how");
+		System.out.println("            evenly the threads got through the phase.");
+		System.out.println("    [mix=<a>/<r>/<c>] replaces the phases by one mixed workload: the");
+		System.out.println("            structure is prefilled, then the threads run <nrItems>");
+		System.out.println("            interleaved operations, <a>% adds, <r>% removes and <c>%");
+		System.out.println("            lookups, on keys drawn from 0..<range>-1 by:");
+		System.out.printf("    [keys=<distribution>] %s (default), %s[:<theta>] (default 0.99,\n", KeyDistribution.UNIFORM, KeyDistribution.ZIPF);
+		System.out.printf("            smallest keys hottest), %s[:<hotKeys>:<hotOps>] (default\n", KeyDistribution.HOTSPOT);
+		System.out.println("            0.2:0.8, the lowest hotKeys of the range get hotOps of the");
+		System.out.printf("            operations) or %s (each thread walks the range).\n", KeyDistribution.SEQUENTIAL);
+		System.out.println("    [range=<n>] key range of the mixed workload, <nrItems> by default.");
+		System.out.println("    [prefill=<n>] distinct keys added before the mixed workload starts,");
+		System.out.println("            half the key range by default.");
+		System.out.println("    [duration=<s>] measures steady-state throughput instead: the");
+		System.out.println("            structure is prefilled with <nrItems> keys, then every");
+		System.out.println("            thread keeps adding and removing again keys of its own,");
+		System.out.println("            with lookups=<n> lookups in between, so the size stays");
+		System.out.println("            at <nrItems>. Operations are counted for <s> seconds");
+		System.out.println("    [warmup=<s>] after a warmup of <s> seconds, 1 by default.");
+		System.out.printf("            A duration run needs every worker running at once, so no\n");
+		System.out.printf("            %s or %s<n> with <n> below <nrThreads>.\n", DRIVER_VIRTUAL, DRIVER_POOL);
 		System.exit(1);
 	}
 
 	public static void main(String[] args) throws InterruptedException {
-		if (args.length < 4 || args.length > 5) {
+		if (args.length < 4) {
 			exitWithError();
 		}
 
@@ -172,18 +591,99 @@ public class Main {
 		}
 		
 		boolean debug = false;
-		if (args.length == 5) {
-			System.out.println(args[4]);
-			if (args[4].equals("debug")) {
+		int nrLookupRounds = 0;
+		String driver = DRIVER_THREADS;
+		boolean latency = false;
+		String mix = null;
+		String keys = KeyDistribution.UNIFORM;
+		int keyRange = nrItems;
+		int prefill = -1;
+		int duration = 0;
+		int warmup = 1;
+		for (int i = 4; i < args.length; i++) {
+			System.out.println(args[i]);
+			if (args[i].equals("debug")) {
 				debug = true;
+			} else if (args[i].equals("latency")) {
+				latency = true;
+			} else if (args[i].startsWith("lookups=")) {
+				nrLookupRounds = Integer.parseInt(args[i].substring("lookups=".length()));
+				if (nrLookupRounds < 0) {
+					exitWithError();
+				}
+			} else if (args[i].startsWith("driver=")) {
+				driver = args[i].substring("driver=".length());
+				if (driver.startsWith(DRIVER_POOL)) {
+					if (Integer.parseInt(driver.substring(DRIVER_POOL.length())) < 1) {
+						exitWithError();
+					}
+				} else if (!driver.equals(DRIVER_THREADS) && !driver.equals(DRIVER_VIRTUAL)) {
+					exitWithError();
+				}
+			} else if (args[i].startsWith("mix=")) {
+				mix = args[i].substring("mix=".length());
+			} else if (args[i].startsWith("keys=")) {
+				keys = args[i].substring("keys=".length());
+			} else if (args[i].startsWith("range=")) {
+				keyRange = Integer.parseInt(args[i].substring("range=".length()));
+				if (keyRange < 1) {
+					exitWithError();
+				}
+			} else if (args[i].startsWith("prefill=")) {
+				prefill = Integer.parseInt(args[i].substring("prefill=".length()));
+			} else if (args[i].startsWith("duration=")) {
+				duration = Integer.parseInt(args[i].substring("duration=".length()));
+				if (duration < 1) {
+					exitWithError();
+				}
+			} else if (args[i].startsWith("warmup=")) {
+				warmup = Integer.parseInt(args[i].substring("warmup=".length()));
+				if (warmup < 0) {
+					exitWithError();
+				}
 			} else {
-				System.out.println("last argument should be 'debug', or be omitted\n");
+				System.out.println("optional arguments should be 'debug', 'lookups=<n>', 'driver=<driver>', 'latency', 'mix=<a>/<r>/<c>', 'keys=<distribution>', 'range=<n>', 'prefill=<n>', 'duration=<s>' or 'warmup=<s>', or be omitted\n");
 				System.exit(1);
 			}
 		}
 
+		Workload workload = null;
+		if (mix != null) {
+			try {
+				workload = new Workload(mix, KeyDistribution.parse(keys, keyRange), prefill < 0 ? keyRange / 2 : prefill);
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage() + "\n");
+				exitWithError();
+			}
+		} else if (!keys.equals(KeyDistribution.UNIFORM) || keyRange != nrItems || prefill >= 0) {
+			System.out.println("keys, range and prefill only apply to a mixed workload\n");
+			exitWithError();
+		}
+
+		if (duration > 0) {
+			if (mix != null) {
+				System.out.println("duration and mix cannot be combined\n");
+				exitWithError();
+			}
+			// the odd keys go up to 2 * nrItems
+			if (nrItems > Integer.MAX_VALUE / 2) {
+				exitWithError();
+			}
+			// queued workers would only start once the running ones stop
+			if (driver.startsWith(DRIVER_POOL) && Integer.parseInt(driver.substring(DRIVER_POOL.length())) < nrThreads) {
+				System.out.println("a duration run needs a pool of at least <nrThreads> threads\n");
+				exitWithError();
+			}
+			// the workers never block, so a virtual one keeps its carrier until STOP
+			// and the workers beyond the carriers would only start after it
+			if (driver.equals(DRIVER_VIRTUAL)) {
+				System.out.println("a duration run cannot use virtual threads\n");
+				exitWithError();
+			}
+		}
+
 		long seed = computeSeed(nrThreads, nrItems, workTime);
 
-		performWork(dataStructure, nrThreads, nrItems, workTime, seed, debug);
+		performWork(dataStructure, nrThreads, nrItems, nrLookupRounds, workTime, seed, debug, driver, latency, workload, duration, warmup);
 	}
 }
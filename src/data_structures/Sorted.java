@@ -1,6 +1,27 @@
 package data_structures;
 
+import java.util.Collection;
+
 public interface Sorted<T extends Comparable<T>> {
 	public void add(T t);
 	public void remove(T t);
+	public boolean contains(T t);
+
+	/*
+	 * Number of elements, in O(1). Exact when no add or remove is running,
+	 * otherwise it may be off by the operations in flight; ExactSizeSorted
+	 * gives a linearizable size.
+	 */
+	public int size();
+
+	/* Same as add (remove) for every element; implementations may sort the batch and merge it in one pass */
+	public default void addAll(Collection<T> ts) {
+		for (T t : ts)
+			add(t);
+	}
+
+	public default void removeAll(Collection<T> ts) {
+		for (T t : ts)
+			remove(t);
+	}
 }
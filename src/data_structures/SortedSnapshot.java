@@ -0,0 +1,145 @@
+package data_structures;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Compact binary snapshot of the keys of a data structure, for reloading
+ * it without replaying every add. The keys are written in order: the
+ * first as a zigzag varint, every next one as the varint of its distance
+ * to the one before, so a dense key set takes about a byte per key.
+ *
+ * Layout (little endian): magic, version, key count, then the keys.
+ *
+ * save() writes whatever order the Iterable gives and refuses keys that
+ * go down, so the Iterable decides how consistent the snapshot is: the
+ * coarse-grained structures copy under their lock, LockFreeTree and
+ * LockFreeList iterate over a snapshot taken while writers go on.
+ */
+public final class SortedSnapshot {
+	private static final int MAGIC = 0x53524b53;
+	private static final int VERSION = 1;
+	private static final int HEADER = 4 + 4 + 4;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private SortedSnapshot() {
+	}
+
+	/* Writes the keys of sorted, which must come in ascending order, to path; returns the number of keys */
+	public static int save(Iterable<Integer> sorted, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			// the count is filled in at the end
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(0);
+
+			int count = 0;
+			long previous = 0;
+			for (int key : sorted) {
+				if (buffer.remaining() < 10) {
+					flush(channel, buffer);
+				}
+				if (count == 0) {
+					putVarint(buffer, ((long) key << 1) ^ (key >> 31));
+				} else {
+					if (key < previous) {
+						throw new IllegalArgumentException("keys should come in ascending order: " + key + " after " + previous);
+					}
+					putVarint(buffer, key - previous);
+				}
+				previous = key;
+				count++;
+			}
+			flush(channel, buffer);
+
+			buffer.putInt(count).flip();
+			channel.write(buffer, 8);
+			channel.force(false);
+			return count;
+		}
+	}
+
+	/* Reads the keys saved in path, in ascending order */
+	public static int[] read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER) {
+				throw new IOException("not a snapshot: " + path);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("not a snapshot: " + path);
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("unknown snapshot version " + version + ": " + path);
+			}
+			// every key takes at least a byte
+			int count = buffer.getInt();
+			if (count < 0 || count > channel.size() - HEADER) {
+				throw new IOException("bad key count " + count + ": " + path);
+			}
+			int[] keys = new int[count];
+			long key = 0;
+			try {
+				for (int i = 0; i < keys.length; i++) {
+					long value = getVarint(buffer);
+					key = i == 0 ? (value >>> 1) ^ -(value & 1) : key + value;
+					keys[i] = (int) key;
+				}
+			} catch (BufferUnderflowException e) {
+				throw new IOException("truncated snapshot: " + path, e);
+			}
+			return keys;
+		}
+	}
+
+	/* Adds the keys saved in path to sorted as one batch */
+	public static void load(Path path, IntSorted sorted) throws IOException {
+		sorted.addAll(read(path));
+	}
+
+	public static void load(Path path, Sorted<Integer> sorted) throws IOException {
+		int[] keys = read(path);
+		List<Integer> batch = new ArrayList<Integer>(keys.length);
+		for (int key : keys) {
+			batch.add(key);
+		}
+		sorted.addAll(batch);
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	// 7 bits per byte, lowest first; the top bit says another byte follows
+	private static void putVarint(ByteBuffer buffer, long value) {
+		while ((value & ~0x7fL) != 0) {
+			buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long getVarint(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+}
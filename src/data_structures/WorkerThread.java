@@ -1,5 +1,6 @@
 package data_structures;
 
+import java.util.Random;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.BrokenBarrierException;
 import java.lang.management.ManagementFactory;
@@ -8,29 +9,84 @@ import java.lang.management.ThreadMXBean;
 public class WorkerThread extends Thread {
 	private int id;
 	private int nrIterations;
-	private Sorted<Integer> sorted;
+	private IntSorted sorted;
 	private int[] itemsToAdd;
 	private int[] itemsToRemove;
+	private int nrLookupRounds;
 	private int workTime;
 	private boolean doWork;
 	private boolean doDebug;
 	private CyclicBarrier barrier;
+	// The interleaved operations and keys of a mixed workload, null when running the phases
+	private byte[] ops;
+	private int[] keys;
+	// Set for a duration run: the steady-state loop runs until Main moves stage to STOP
+	private int nrThreads;
+	private long seed;
+	static final int WARMUP = 0, MEASURE = 1, STOP = 2;
+	volatile int stage = WARMUP;
+	// Operations of each kind done so far, in a duration run only those after the warmup
+	final long[] opCounts = new long[3];
+	// Set by thread 0 only, to time the lookup phase
+	long lookupPhaseStart;
+	long lookupPhaseEnd;
+
+	// Per-operation latencies of each phase, null unless they are recorded
+	static final int ADD = 0, LOOKUP = 1, REMOVE = 2;
+	final LatencyHistogram[] latencies;
+	// Time this thread spent in each phase, in nanoseconds
+	final long[] phaseTimes = new long[3];
 	
-	WorkerThread(int id, Sorted<Integer> list, int nrIterations, int[] itemsToAdd, int[] itemsToRemove, int workTime, CyclicBarrier barrier, boolean debug) {
+	WorkerThread(int id, IntSorted list, int nrIterations, int[] itemsToAdd, int[] itemsToRemove, int nrLookupRounds, int workTime, CyclicBarrier barrier, boolean debug, boolean recordLatencies) {
 		this.sorted = list;
 		this.id = id;
 		this.nrIterations = nrIterations;
 		this.itemsToAdd = itemsToAdd;
 		this.itemsToRemove = itemsToRemove;
+		this.nrLookupRounds = nrLookupRounds;
 		this.workTime = workTime;
 		this.doWork = workTime > 0;
 		this.barrier = barrier;
 		this.doDebug = debug;
+		if (recordLatencies) {
+			this.latencies = new LatencyHistogram[] { new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram() };
+		} else {
+			this.latencies = null;
+		}
+	}
+
+	/* A worker that runs its slice of a generated mixed workload instead of the add, lookup and remove phases */
+	WorkerThread(int id, IntSorted list, int nrIterations, byte[] ops, int[] keys, int workTime, boolean recordLatencies) {
+		this(id, list, nrIterations, null, null, 0, workTime, null, false, recordLatencies);
+		this.ops = ops;
+		this.keys = keys;
+	}
+
+	/*
+	 * A worker for a duration run on a structure prefilled with the even keys
+	 * below 2 * keyRange. It owns the odd keys 2 * j + 1 with j = id modulo
+	 * nrThreads, and keeps adding and removing again one of those, with
+	 * nrLookupRounds lookups of any key in between. No two threads touch the
+	 * same odd key, so the size never strays more than nrThreads from
+	 * keyRange.
+	 */
+	WorkerThread(int id, IntSorted list, int nrThreads, int keyRange, int nrLookupRounds, int workTime, long seed, boolean recordLatencies) {
+		this(id, list, keyRange, null, null, nrLookupRounds, workTime, null, false, recordLatencies);
+		this.nrThreads = nrThreads;
+		this.seed = seed;
 	}
 
 	public void run() {
-		int startIndex = nrIterations * id;
-		add(sorted, startIndex, nrIterations, itemsToAdd);
+		if (nrThreads > 0) {
+			durationPhase();
+			return;
+		}
+		if (ops != null) {
+			mixedPhase();
+			return;
+		}
+
+		addPhase();
 
 		try {
 		    barrier.await();
@@ -40,6 +96,16 @@ public class WorkerThread extends Thread {
 		    	    }
 		    	    barrier.await();
 		    }
+		    if (nrLookupRounds > 0) {
+		    	    if (this.id == 0) {
+		    	    	    lookupPhaseStart = System.currentTimeMillis();
+		    	    }
+		    	    lookupPhase();
+		    	    barrier.await();
+		    	    if (this.id == 0) {
+		    	    	    lookupPhaseEnd = System.currentTimeMillis();
+		    	    }
+		    }
 		}
 		catch (InterruptedException e) {
 		    e.printStackTrace();
@@ -48,17 +114,150 @@ public class WorkerThread extends Thread {
 		    e.printStackTrace();
 		}
 
-		remove(sorted, startIndex, nrIterations, itemsToRemove);
+		removePhase();
+	}
+
+	/* The phases of run(), also called one by one when Main drives the workers from an executor */
+	void addPhase() {
+		long start = System.nanoTime();
+		add(sorted, nrIterations * id, nrIterations, itemsToAdd);
+		phaseTimes[ADD] = System.nanoTime() - start;
+	}
+
+	void lookupPhase() {
+		long start = System.nanoTime();
+		for (int round = 0; round < nrLookupRounds; round++) {
+			lookup(sorted, nrIterations * id, nrIterations, itemsToRemove);
+		}
+		phaseTimes[LOOKUP] = System.nanoTime() - start;
+	}
+
+	void removePhase() {
+		long start = System.nanoTime();
+		remove(sorted, nrIterations * id, nrIterations, itemsToRemove);
+		phaseTimes[REMOVE] = System.nanoTime() - start;
 	}
 
-	private void remove(Sorted<Integer> sorted, int startIndex, int nrIterations, int[] itemsToRemove) {
+	void mixedPhase() {
+		long start = System.nanoTime();
+		int startIndex = nrIterations * id;
+		for (int i = startIndex; i < startIndex + nrIterations; i++) {
+			doWork();
+			int op = ops[i];
+			long opStart = latencies != null ? System.nanoTime() : 0;
+			switch (op) {
+				case ADD:
+					sorted.add(keys[i]);
+					break;
+				case REMOVE:
+					sorted.remove(keys[i]);
+					break;
+				default:
+					sorted.contains(keys[i]);
+			}
+			if (latencies != null) {
+				latencies[op].record(System.nanoTime() - opStart);
+			}
+		}
+		// every kind of operation ran for the whole phase
+		long time = System.nanoTime() - start;
+		phaseTimes[ADD] = phaseTimes[LOOKUP] = phaseTimes[REMOVE] = time;
+	}
+
+	void durationPhase() {
+		Random random = new Random(seed + id);
+		int keyRange = nrIterations;
+		int nrOwnedKeys = (keyRange - id + nrThreads - 1) / nrThreads;
+		boolean measuring = false;
+		long start = 0;
+		while (true) {
+			int stage = this.stage;
+			if (stage == STOP) {
+				break;
+			}
+			if (stage == MEASURE && !measuring) {
+				// the warmup is over, count from here
+				measuring = true;
+				opCounts[ADD] = opCounts[LOOKUP] = opCounts[REMOVE] = 0;
+				start = System.nanoTime();
+			}
+
+			int key = 2 * (id + nrThreads * random.nextInt(nrOwnedKeys)) + 1;
+			perform(ADD, key, measuring);
+			for (int round = 0; round < nrLookupRounds; round++) {
+				perform(LOOKUP, random.nextInt(2 * keyRange), measuring);
+			}
+			perform(REMOVE, key, measuring);
+		}
+		long time = measuring ? System.nanoTime() - start : 0;
+		phaseTimes[ADD] = phaseTimes[LOOKUP] = phaseTimes[REMOVE] = time;
+	}
+
+	private void perform(int op, int key, boolean measuring) {
+		doWork();
+		long start = measuring && latencies != null ? System.nanoTime() : 0;
+		switch (op) {
+			case ADD:
+				sorted.add(key);
+				break;
+			case REMOVE:
+				sorted.remove(key);
+				break;
+			default:
+				sorted.contains(key);
+		}
+		if (measuring && latencies != null) {
+			latencies[op].record(System.nanoTime() - start);
+		}
+		opCounts[op]++;
+	}
+
+	// The timed loops are separate so that the untimed ones do not pay for the check
+	private void remove(IntSorted sorted, int startIndex, int nrIterations, int[] itemsToRemove) {
+		if (latencies != null) {
+			LatencyHistogram latency = latencies[REMOVE];
+			for (int i = startIndex; i < startIndex + nrIterations; i++) {
+				doWork();
+				long start = System.nanoTime();
+				sorted.remove(itemsToRemove[i]);
+				latency.record(System.nanoTime() - start);
+			}
+			return;
+		}
 		for (int i = startIndex; i < startIndex + nrIterations; i++) {
 			doWork();
 			sorted.remove(itemsToRemove[i]);
 		}
 	}
 
-	private void add(Sorted<Integer> sorted, int startIndex, int nrIterations, int[] itemsToAdd) {
+	private void lookup(IntSorted sorted, int startIndex, int nrIterations, int[] itemsToLookup) {
+		if (latencies != null) {
+			LatencyHistogram latency = latencies[LOOKUP];
+			for (int i = startIndex; i < startIndex + nrIterations; i++) {
+				doWork();
+				long start = System.nanoTime();
+				sorted.contains(itemsToLookup[i]);
+				latency.record(System.nanoTime() - start);
+			}
+			return;
+		}
+		for (int i = startIndex; i < startIndex + nrIterations; i++) {
+			doWork();
+			sorted.contains(itemsToLookup[i]);
+		}
+	}
+
+	private void add(IntSorted sorted, int startIndex, int nrIterations, int[] itemsToAdd) {
+		if (latencies != null) {
+			LatencyHistogram latency = latencies[ADD];
+			for (int i = startIndex; i < startIndex + nrIterations; i++) {
+				doWork();
+				long start = System.nanoTime();
+				sorted.add(itemsToAdd[i]);
+				latency.record(System.nanoTime() - start);
+			}
+			return;
+		}
 		for (int i = startIndex; i < startIndex + nrIterations; i++) {
 			doWork();
 			sorted.add(itemsToAdd[i]);
@@ -68,6 +267,12 @@ public class WorkerThread extends Thread {
 	private void doWork() {
 		if (doWork) {
 			long start = ManagementFactory.getThreadMXBean().getThreadCpuTime(Thread.currentThread().getId());
+			if (start < 0) {
+				// no CPU time for this thread (a virtual thread), wait on the wall clock instead
+				long end = System.nanoTime() + workTime * 1000L;
+				while (System.nanoTime() < end); // busy wait
+				return;
+			}
 
 			long end = start + workTime * 1000;
 			while (ManagementFactory.getThreadMXBean().getThreadCpuTime(Thread.currentThread().getId()) < end); // busy wait
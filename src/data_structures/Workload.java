@@ -0,0 +1,73 @@
+package data_structures;
+
+import java.util.Random;
+
+/*
+ * A mixed workload: the structure is prefilled, then every thread runs its
+ * own interleaved stream of adds, removes and lookups on keys drawn from a
+ * KeyDistribution. The streams are generated before the run, like the
+ * work data of the add and remove phases, so generating keys is not timed.
+ */
+class Workload {
+	final int addPercent;
+	final int removePercent;
+	final int keyRange;
+	final int prefill;
+	final KeyDistribution distribution;
+
+	/* mix is <add>/<remove>/<contains> in percentages that add up to 100 */
+	Workload(String mix, KeyDistribution distribution, int prefill) {
+		String[] parts = mix.split("/");
+		if (parts.length != 3) {
+			throw new IllegalArgumentException("mix should be <add>/<remove>/<contains>: " + mix);
+		}
+		int add = Integer.parseInt(parts[0]);
+		int remove = Integer.parseInt(parts[1]);
+		int contains = Integer.parseInt(parts[2]);
+		if (add < 0 || remove < 0 || contains < 0 || add + remove + contains != 100) {
+			throw new IllegalArgumentException("mix percentages should add up to 100: " + mix);
+		}
+		if (prefill < 0 || prefill > distribution.keyRange) {
+			throw new IllegalArgumentException("prefill should lie between 0 and the key range: " + prefill);
+		}
+		this.addPercent = add;
+		this.removePercent = remove;
+		this.distribution = distribution;
+		this.keyRange = distribution.keyRange;
+		this.prefill = prefill;
+	}
+
+	/* prefill distinct keys of the range, in random order so the unbalanced trees stay shallow */
+	int[] prefillKeys(long seed) {
+		Random random = new Random(seed);
+		int[] range = new int[keyRange];
+		for (int i = 0; i < keyRange; i++) {
+			range[i] = i;
+		}
+		int[] keys = new int[prefill];
+		for (int i = 0; i < prefill; i++) {
+			int j = i + random.nextInt(keyRange - i);
+			keys[i] = range[j];
+			range[j] = range[i];
+		}
+		return keys;
+	}
+
+	/* Fills slice id of ops and keys with the stream of thread id; ops holds WorkerThread.ADD, LOOKUP or REMOVE */
+	void generate(int id, int nrThreads, long seed, byte[] ops, int[] keys) {
+		int nrIterations = ops.length / nrThreads;
+		Random random = new Random(seed + id);
+		KeyDistribution keyDistribution = distribution.forThread(id, nrThreads);
+		for (int i = nrIterations * id; i < nrIterations * (id + 1); i++) {
+			int op = random.nextInt(100);
+			if (op < addPercent) {
+				ops[i] = WorkerThread.ADD;
+			} else if (op < addPercent + removePercent) {
+				ops[i] = WorkerThread.REMOVE;
+			} else {
+				ops[i] = WorkerThread.LOOKUP;
+			}
+			keys[i] = keyDistribution.next(random);
+		}
+	}
+}
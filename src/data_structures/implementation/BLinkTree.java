@@ -0,0 +1,307 @@
+package data_structures.implementation;
+
+import data_structures.Sorted;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * B-link tree of Lehman and Yao. Every node holds up to ORDER keys, a high
+ * key above all keys it may hold and a link to its right sibling, so a
+ * search that lands on a node that was split meanwhile moves right to
+ * find the keys that went there; a parent only needs to learn about a new
+ * node later.
+ *
+ * The keys, children, high key and right link of a node are one immutable
+ * Contents, replaced as a whole by the writer holding the node's lock. A
+ * reader reads each node's contents once and takes no locks. A writer
+ * holds one lock at a time: it locks the leaf, and when that splits,
+ * unlocks it before locking the parent to add the separator of the new
+ * node. Removing leaves nodes as they are, so nodes never go away and a
+ * stale path is repaired by moving right.
+ *
+ * A set: add ignores a key that is present already.
+ */
+public class BLinkTree<T extends Comparable<T>> implements Sorted<T>, Iterable<T>, Contended {
+    static final int ORDER = 64;
+
+    private volatile Node<T> root = new Node<T>(0, new Contents<T>(new Object[0], null, null, null));
+    // only taken to replace the root
+    private final ReentrantLock rootLock = new ReentrantLock();
+    private final SizeCounter size = new SizeCounter();
+    private final ContentionStats stats = new ContentionStats();
+
+    public void add(T t) {
+        List<Node<T>> path = new ArrayList<Node<T>>();
+        Node<T> node = lockLeaf(t, path);
+        Contents<T> c = node.contents;
+        int i = c.search(t);
+        if (i < c.keys.length && c.key(i).compareTo(t) == 0) {
+            node.lock.unlock();
+            return;
+        }
+        size.increment();
+        Object[] keys = insert(c.keys, i, t);
+        insertAndUnlock(node, keys, null, path);
+    }
+
+    public void remove(T t) {
+        Node<T> node = lockLeaf(t, null);
+        try {
+            Contents<T> c = node.contents;
+            int i = c.search(t);
+            if (i == c.keys.length || c.key(i).compareTo(t) != 0)
+                return;
+            // no merging: the leaf keeps its range, even when it is left empty
+            node.contents = new Contents<T>(delete(c.keys, i), null, c.high, c.right);
+            size.decrement();
+        }
+        finally {
+            node.lock.unlock();
+        }
+    }
+
+    public boolean contains(T t) {
+        Node<T> node = root;
+        while (true) {
+            Contents<T> c = node.contents;
+            if (c.isBeyond(t)) {
+                node = c.right;
+            } else if (c.children != null) {
+                node = c.child(t);
+            } else {
+                int i = c.search(t);
+                return i < c.keys.length && c.key(i).compareTo(t) == 0;
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public ContentionStats contentionStats() {
+        return stats;
+    }
+
+    /* Iterates along the leaves; weakly consistent, each leaf is seen as it was at one moment */
+    public Iterator<T> iterator() {
+        Node<T> node = root;
+        while (node.contents.children != null)
+            node = node.contents.children[0];
+        List<T> items = new ArrayList<T>();
+        for (; node != null; node = node.contents.right) {
+            Contents<T> c = node.contents;
+            for (int i = 0; i < c.keys.length; i++)
+                items.add(c.key(i));
+        }
+        return items.iterator();
+    }
+
+    public String toString() {
+        List<T> items = new ArrayList<T>();
+        for (T t : this)
+            items.add(t);
+        return items.toString();
+    }
+
+    /* Returns the locked leaf whose range holds t; path, when given, gets the inner nodes passed on the way down */
+    private Node<T> lockLeaf(T t, List<Node<T>> path) {
+        Node<T> node = root;
+        while (true) {
+            Contents<T> c = node.contents;
+            if (c.isBeyond(t)) {
+                node = c.right;
+            } else if (c.children != null) {
+                if (path != null)
+                    path.add(node);
+                node = c.child(t);
+            } else {
+                break;
+            }
+        }
+        return moveRight(node, t);
+    }
+
+    /* Locks node, then moves right, one lock at a time, until the node whose range holds t */
+    private Node<T> moveRight(Node<T> node, T t) {
+        stats.lock(node.lock);
+        while (node.contents.isBeyond(t)) {
+            Node<T> right = node.contents.right;
+            node.lock.unlock();
+            node = right;
+            stats.lock(node.lock);
+        }
+        return node;
+    }
+
+    /*
+     * node is locked and gets keys (and children, for an inner node).
+     * When they fit it is done; otherwise node keeps the lower half and a
+     * new right sibling the upper half, and after unlocking node the
+     * separator goes to the parent, which may split in turn.
+     */
+    private void insertAndUnlock(Node<T> node, Object[] keys, Node<T>[] children, List<Node<T>> path) {
+        while (true) {
+            Contents<T> c = node.contents;
+            if (keys.length <= ORDER) {
+                node.contents = new Contents<T>(keys, children, c.high, c.right);
+                node.lock.unlock();
+                return;
+            }
+
+            int mid = keys.length / 2;
+            @SuppressWarnings("unchecked")
+            T separator = (T) keys[mid];
+            Node<T> sibling;
+            Contents<T> lower;
+            if (children == null) {
+                // leaves: the separator is the first key of the new node
+                sibling = new Node<T>(node.level, new Contents<T>(slice(keys, mid, keys.length), null, c.high, c.right));
+                lower = new Contents<T>(slice(keys, 0, mid), null, separator, sibling);
+            } else {
+                // inner nodes: the separator moves up
+                sibling = new Node<T>(node.level, new Contents<T>(slice(keys, mid + 1, keys.length), slice(children, mid + 1, children.length), c.high, c.right));
+                lower = new Contents<T>(slice(keys, 0, mid), slice(children, 0, mid + 1), separator, sibling);
+            }
+            // the sibling is complete before this write makes it reachable
+            node.contents = lower;
+            node.lock.unlock();
+
+            Node<T> parent = lockParent(node, separator, sibling, path);
+            if (parent == null)
+                return;
+            Contents<T> p = parent.contents;
+            int i = p.search(separator);
+            keys = insert(p.keys, i, separator);
+            children = insert(p.children, i + 1, sibling);
+            node = parent;
+        }
+    }
+
+    /*
+     * Locks the node above node whose range holds separator. When node is
+     * the root, a new root over node and sibling is made instead, and null
+     * returned.
+     */
+    private Node<T> lockParent(Node<T> node, T separator, Node<T> sibling, List<Node<T>> path) {
+        if (!path.isEmpty())
+            return moveRight(path.remove(path.size() - 1), separator);
+
+        rootLock.lock();
+        try {
+            Node<T> top = root;
+            if (top.level == node.level) {
+                // the leftmost node on this level; a sibling in between is still reached through right links
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                Node<T>[] children = new Node[] { top, sibling };
+                root = new Node<T>(node.level + 1, new Contents<T>(new Object[] { separator }, children, null, null));
+                return null;
+            }
+        }
+        finally {
+            rootLock.unlock();
+        }
+        // the tree grew since we passed: find the level above node again from the new root
+        Node<T> parent = root;
+        while (true) {
+            Contents<T> c = parent.contents;
+            if (c.isBeyond(separator))
+                parent = c.right;
+            else if (parent.level > node.level + 1)
+                parent = c.child(separator);
+            else
+                return moveRight(parent, separator);
+        }
+    }
+
+    private static Object[] insert(Object[] array, int i, Object item) {
+        Object[] copy = new Object[array.length + 1];
+        System.arraycopy(array, 0, copy, 0, i);
+        copy[i] = item;
+        System.arraycopy(array, i, copy, i + 1, array.length - i);
+        return copy;
+    }
+
+    private static <T extends Comparable<T>> Node<T>[] insert(Node<T>[] array, int i, Node<T> node) {
+        Node<T>[] copy = Arrays.copyOf(array, array.length + 1);
+        System.arraycopy(array, i, copy, i + 1, array.length - i);
+        copy[i] = node;
+        return copy;
+    }
+
+    private static Object[] delete(Object[] array, int i) {
+        Object[] copy = new Object[array.length - 1];
+        System.arraycopy(array, 0, copy, 0, i);
+        System.arraycopy(array, i + 1, copy, i, array.length - i - 1);
+        return copy;
+    }
+
+    private static <A> A[] slice(A[] array, int from, int to) {
+        return Arrays.copyOfRange(array, from, to);
+    }
+
+    static final class Node<T extends Comparable<T>> {
+        // 0 for leaves
+        final int level;
+        final ReentrantLock lock = new ReentrantLock();
+        // written under lock only
+        volatile Contents<T> contents;
+
+        Node(int level, Contents<T> contents) {
+            this.level = level;
+            this.contents = contents;
+        }
+    }
+
+    /*
+     * Never changed once published. Child i of an inner node holds the keys
+     * from separator i-1 up to separator i; all keys lie below high, which
+     * is null (infinite) for the rightmost node of a level.
+     */
+    static final class Contents<T extends Comparable<T>> {
+        final Object[] keys;
+        final Node<T>[] children;
+        final T high;
+        final Node<T> right;
+
+        Contents(Object[] keys, Node<T>[] children, T high, Node<T> right) {
+            this.keys = keys;
+            this.children = children;
+            this.high = high;
+            this.right = right;
+        }
+
+        @SuppressWarnings("unchecked")
+        T key(int i) {
+            return (T) keys[i];
+        }
+
+        boolean isBeyond(T t) {
+            return high != null && t.compareTo(high) >= 0;
+        }
+
+        /* index of the first key that is not smaller than t */
+        int search(T t) {
+            int lo = 0, hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (key(mid).compareTo(t) < 0)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        Node<T> child(T t) {
+            // a key equal to separator i belongs to child i + 1
+            int i = search(t);
+            if (i < keys.length && key(i).compareTo(t) == 0)
+                i++;
+            return children[i];
+        }
+    }
+}
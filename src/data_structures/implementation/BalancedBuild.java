@@ -0,0 +1,72 @@
+package data_structures.implementation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Builds a perfectly balanced tree over n sorted items in O(n): the middle
+ * item becomes the root of the range and both halves are built the same
+ * way. Halves larger than SEQUENTIAL are built in parallel on the common
+ * fork-join pool. The tree supplies how to make its nodes, by index into
+ * its sorted items:
+ *
+ * - a node tree (CoarseGrainedTree, FineGrainedTree) keeps an item in
+ *   every node, so a range splits into [from, mid), mid and (mid, to);
+ * - a leaf tree (LockFreeTree) keeps items in leaves only, and an inner
+ *   node holds the first item of its right half, so a range splits into
+ *   [from, mid) and [mid, to).
+ */
+@SuppressWarnings("serial")
+final class BalancedBuild<N> extends RecursiveTask<N> {
+	// ranges up to this size are built by the thread that gets them
+	private static final int SEQUENTIAL = 1 << 12;
+
+	interface Nodes<N> {
+		/* a node without children holding item i */
+		N leaf(int i);
+
+		/* a node splitting at item mid; left or right is null for an empty half of a node tree */
+		N inner(int mid, N left, N right);
+	}
+
+	private final Nodes<N> nodes;
+	private final boolean leafTree;
+	private final int from, to;
+
+	private BalancedBuild(Nodes<N> nodes, boolean leafTree, int from, int to) {
+		this.nodes = nodes;
+		this.leafTree = leafTree;
+		this.from = from;
+		this.to = to;
+	}
+
+	/* Root of a node tree over items [0, n), null when n is 0 */
+	static <N> N nodeTree(Nodes<N> nodes, int n) {
+		return ForkJoinPool.commonPool().invoke(new BalancedBuild<N>(nodes, false, 0, n));
+	}
+
+	/* Root of a leaf tree over items [0, n); n must be at least 1 */
+	static <N> N leafTree(Nodes<N> nodes, int n) {
+		return ForkJoinPool.commonPool().invoke(new BalancedBuild<N>(nodes, true, 0, n));
+	}
+
+	protected N compute() {
+		if (to - from <= SEQUENTIAL)
+			return build(from, to);
+		int mid = (from + to) >>> 1;
+		BalancedBuild<N> left = new BalancedBuild<N>(nodes, leafTree, from, mid);
+		left.fork();
+		N right = new BalancedBuild<N>(nodes, leafTree, leafTree ? mid : mid + 1, to).compute();
+		// join() orders the left half's writes before the node that links it
+		return nodes.inner(mid, left.join(), right);
+	}
+
+	private N build(int from, int to) {
+		if (from >= to)
+			return null;
+		if (to - from == 1)
+			return nodes.leaf(from);
+		int mid = (from + to) >>> 1;
+		return nodes.inner(mid, build(from, mid), build(leafTree ? mid : mid + 1, to));
+	}
+}
@@ -2,13 +2,21 @@ package data_structures.implementation;
 
 import data_structures.Sorted;
 import data_structures.implementation.Node;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T> {
+public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T>, Iterable<T>, Contended {
 
 	private Node<T> _head;
 	private Lock _lock = new ReentrantLock();
+	// only written under _lock, volatile so size() needs no lock
+	private volatile int _size = 0;
+	private final ContentionStats _stats = new ContentionStats();
 
 	public CoarseGrainedList() {
 		//constructor
@@ -23,7 +31,7 @@ public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T> {
 		Node<T> prev, curr;
 		int key = t.hashCode();
 		//lock mutex
-        _lock.lock();
+        _stats.lock(_lock);
         try
 		{
 			prev = _head;
@@ -37,6 +45,7 @@ public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T> {
 			Node<T> node = new Node<T>(t);
 			node.next = curr;
 			prev.next = node;
+			_size++;
 		}
 		finally
 		{
@@ -48,7 +57,7 @@ public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T> {
 		Node<T> prev, curr;
     	int key = t.hashCode();
 		//lock the mutex
-    	_lock.lock();
+    	_stats.lock(_lock);
 		try 
 		{
       		prev = _head;
@@ -58,10 +67,12 @@ public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T> {
 				prev = curr;
 				curr = curr.next;
 			}
-			if (key == curr.key) 
+			// the tail sentinel carries no data
+			if (key == curr.key && curr.data != null) 
 			{
 				// java GC will cleanup when no one references
 				prev.next = curr.next;
+				_size--;
 			} 
 		}
 		finally 
@@ -70,11 +81,119 @@ public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T> {
 		}
 	}
 
+	public void addAll(Collection<T> ts) {
+		// sorted the same way as the list, so the whole batch is merged in one walk
+		List<T> batch = new ArrayList<T>(ts);
+		batch.sort(Comparator.comparingInt(Object::hashCode));
+		Node<T> prev, curr;
+		_stats.lock(_lock);
+		try
+		{
+			prev = _head;
+			curr = _head.next;
+			for (T t : batch)
+			{
+				int key = t.hashCode();
+				while (curr.key < key)
+				{
+					prev = curr;
+					curr = curr.next;
+				}
+				Node<T> node = new Node<T>(t);
+				node.next = curr;
+				prev.next = node;
+				prev = node;
+				_size++;
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public void removeAll(Collection<T> ts) {
+		List<T> batch = new ArrayList<T>(ts);
+		batch.sort(Comparator.comparingInt(Object::hashCode));
+		Node<T> prev, curr;
+		_stats.lock(_lock);
+		try
+		{
+			prev = _head;
+			curr = _head.next;
+			for (T t : batch)
+			{
+				int key = t.hashCode();
+				while (curr.key < key)
+				{
+					prev = curr;
+					curr = curr.next;
+				}
+				// the tail sentinel carries no data
+				if (key == curr.key && curr.data != null)
+				{
+					prev.next = curr.next;
+					curr = curr.next;
+					_size--;
+				}
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public boolean contains(T t) {
+		Node<T> curr;
+		int key = t.hashCode();
+		_stats.lock(_lock);
+		try
+		{
+			curr = _head.next;
+			while (curr.key < key)
+			{
+				curr = curr.next;
+			}
+			// the tail sentinel carries no data
+			return key == curr.key && curr.data != null;
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+
+	public int size() {
+		return _size;
+	}
+
+	public ContentionStats contentionStats() {
+		return _stats;
+	}
+
+	/* Iterates over a copy taken under the lock, so it never sees later updates */
+	public Iterator<T> iterator() {
+		List<T> items = new ArrayList<T>(_size);
+		_stats.lock(_lock);
+		try
+		{
+			// the tail sentinel is the only node without a successor
+			for (Node<T> curr = _head.next; curr.next != null; curr = curr.next)
+				items.add(curr.data);
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+		return items.iterator();
+	}
 
 	public String toString() {
 		String ret = "[";
 		Node<T> curr = _head;
-		_lock.lock();
+		_stats.lock(_lock);
 		try
 		{
 			while (curr.next.key != Integer.MAX_VALUE) {
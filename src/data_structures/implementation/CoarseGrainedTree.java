@@ -2,30 +2,49 @@ package data_structures.implementation;
 
 import data_structures.Sorted;
 import data_structures.implementation.BSTNode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 
-public class CoarseGrainedTree<T extends Comparable<T>> implements Sorted<T> {
+public class CoarseGrainedTree<T extends Comparable<T>> implements Sorted<T>, Iterable<T>, Contended {
 
 	private BSTNode<T> root;
 
 	private Lock lock;
 
+	// only written under lock, volatile so size() needs no lock
+	private volatile int size = 0;
+
+	private final ContentionStats stats = new ContentionStats();
+
 	/* Constructor */
 	public CoarseGrainedTree() {
 		this.root = null;
 		lock = new ReentrantLock();
 	}
 
+	/* A balanced tree holding items, built in O(n) when they are sorted already; see addAll */
+	public CoarseGrainedTree(Collection<T> items) {
+		this();
+		addAll(items);
+	}
+
 	public void add(T t) {
 
 		BSTNode<T> addNode = new BSTNode<T>(t);
 		if (t == null)
 			return;
 
-		lock.lock();
+		stats.lock(lock);
 		try {
+			size++;
 			if (root == null) {
 				// Add the new node when root is not available
 				this.root = addNode;
@@ -73,30 +92,178 @@ public class CoarseGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 	
 
 	public void remove(T t) {
-		BSTNode<T> removeNode = new BSTNode<T>(t);
-		lock.lock();
+		stats.lock(lock);
+		try {
+			removeLocked(t);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void addAll(Collection<T> ts) {
+		List<T> batch = new ArrayList<T>(ts);
+		batch.removeIf(t -> t == null);
+		Collections.sort(batch);
+		stats.lock(lock);
 		try {
-			// First check if root exists
 			if (root == null)
-				// The tree is empty
-				// Node does not exist in the tree
-				return;
-            // Secondly check if root data is the one to be removed
-			if (root.compareTo(removeNode) == 0) {
-				BSTNode<T> dummyNode = new BSTNode<T>();
-				dummyNode.setLeft(root);
-				delete(removeNode, root,dummyNode);
-				root = dummyNode.getLeft();
-				return;
-			}
+				buildBalanced(batch);
 			else
-				delete(removeNode, root, null);
+				addMedianFirst(batch, 0, batch.size());
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void removeAll(Collection<T> ts) {
+		List<T> batch = new ArrayList<T>(ts);
+		batch.removeIf(t -> t == null);
+		Collections.sort(batch);
+		stats.lock(lock);
+		try {
+			// the dummy node stands in for the parent of the root
+			BSTNode<T> dummyNode = new BSTNode<T>();
+			dummyNode.setLeft(root);
+			removeSorted(batch, 0, batch.size(), dummyNode, true);
+			root = dummyNode.getLeft();
 		}
 		finally {
 			lock.unlock();
 		}
 	}
 
+	/*
+	 * Adds the sorted batch[from..to) middle element first, so the batch forms
+	 * a balanced subtree instead of a chain of right children.
+	 */
+	private void addMedianFirst(List<T> batch, int from, int to) {
+		if (from >= to)
+			return;
+		int mid = (from + to) >>> 1;
+		BSTNode<T> addNode = new BSTNode<T>(batch.get(mid));
+		size++;
+		if (root == null)
+			this.root = addNode;
+		else
+			insert(addNode, root, null);
+		addMedianFirst(batch, from, mid);
+		addMedianFirst(batch, mid + 1, to);
+	}
+
+	/* caller holds lock and the tree is empty; builds the sorted batch as one balanced tree without searching */
+	private void buildBalanced(List<T> batch) {
+		root = BalancedBuild.nodeTree(new BalancedBuild.Nodes<BSTNode<T>>() {
+			public BSTNode<T> leaf(int i) {
+				return new BSTNode<T>(batch.get(i));
+			}
+
+			public BSTNode<T> inner(int mid, BSTNode<T> left, BSTNode<T> right) {
+				BSTNode<T> node = new BSTNode<T>(batch.get(mid), left, right);
+				if (left != null)
+					setParentNode(left, node);
+				if (right != null)
+					setParentNode(right, node);
+				return node;
+			}
+		}, batch.size());
+		size = batch.size();
+	}
+
+	/*
+	 * caller holds lock; removes the sorted batch[from..to) from the left or
+	 * right subtree of parent in one pass down the tree: every node splits
+	 * the keys between its two subtrees, so each node is visited once for
+	 * the whole batch instead of once per key.
+	 */
+	private void removeSorted(List<T> batch, int from, int to, BSTNode<T> parent, boolean left) {
+		BSTNode<T> curr = left ? parent.getLeft() : parent.getRight();
+		while (curr != null && from < to) {
+			T data = curr.getData();
+			int lo = firstNotBelow(batch, from, to, data), hi = lo;
+			while (hi < to && batch.get(hi).compareTo(data) == 0)
+				hi++;
+			if (lo == hi) {
+				// the smaller keys go left, the larger ones right
+				removeSorted(batch, from, lo, curr, true);
+				parent = curr;
+				left = false;
+				curr = curr.getRight();
+				from = hi;
+				continue;
+			}
+			size--;
+			if (curr.getLeft() != null && curr.getRight() != null) {
+				// Case 1: removeNode has two children
+				// Replace its data with the minimum data in the right subtree,
+				// and unlink the node holding that minimum data. The other
+				// equal keys and the larger ones stay here: the new data may
+				// be one of them, and a smaller one goes left from here on
+				removeSorted(batch, from, lo, curr, true);
+				BSTNode<T> minParent = curr, min = curr.getRight();
+				while (min.getLeft() != null) {
+					minParent = min;
+					min = min.getLeft();
+				}
+				curr.setData(min.getData());
+				if (minParent == curr)
+					minParent.setRight(min.getRight());
+				else
+					minParent.setLeft(min.getRight());
+				from = lo + 1;
+				continue;
+			}
+			// Case 2: removeNode has one child
+			// Case 3: removeNode has none children
+			// equal keys can be in either subtree, so the other ones go to the child
+			BSTNode<T> child = (curr.getLeft() != null) ? curr.getLeft() : curr.getRight();
+			if (left)
+				parent.setLeft(child);
+			else
+				parent.setRight(child);
+			// the side that is gone needs no search
+			if (curr.getLeft() != null)
+				to = hi - 1;
+			else
+				from = lo + 1;
+			curr = child;
+		}
+	}
+
+	/* first index in the sorted batch[from..to) of a key not below t, to if there is none */
+	private static <T extends Comparable<T>> int firstNotBelow(List<T> batch, int from, int to, T t) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (batch.get(mid).compareTo(t) < 0)
+				from = mid + 1;
+			else
+				to = mid;
+		}
+		return from;
+	}
+
+	/* caller holds lock */
+	private void removeLocked(T t) {
+		BSTNode<T> removeNode = new BSTNode<T>(t);
+		// First check if root exists
+		if (root == null)
+			// The tree is empty
+			// Node does not exist in the tree
+			return;
+        // Secondly check if root data is the one to be removed
+		if (root.compareTo(removeNode) == 0) {
+			BSTNode<T> dummyNode = new BSTNode<T>();
+			dummyNode.setLeft(root);
+			delete(removeNode, root,dummyNode);
+			root = dummyNode.getLeft();
+			size--;
+			return;
+		}
+		else if (delete(removeNode, root, null))
+			size--;
+	}
+
 	private boolean delete(BSTNode<T> removeNode, BSTNode<T> curr, BSTNode<T> parent){
 		if (removeNode == null || curr == null)
 			return false;
@@ -146,6 +313,58 @@ public class CoarseGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 	}
 
 	
+	public boolean contains(T t) {
+		if (t == null)
+			return false;
+
+		stats.lock(lock);
+		try {
+			BSTNode<T> curr = root;
+			while (curr != null) {
+				int cmp = t.compareTo(curr.getData());
+				if (cmp == 0)
+					return true;
+				// equal data goes to the left on insert, so search the same way
+				curr = cmp < 0 ? curr.getLeft() : curr.getRight();
+			}
+			return false;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public ContentionStats contentionStats() {
+		return stats;
+	}
+
+	/* Iterates in order over a copy taken under the lock, so it never sees later updates */
+	public Iterator<T> iterator() {
+		List<T> items = new ArrayList<T>(size);
+		Deque<BSTNode<T>> stack = new ArrayDeque<BSTNode<T>>();
+		stats.lock(lock);
+		try {
+			BSTNode<T> curr = root;
+			while (curr != null || !stack.isEmpty()) {
+				while (curr != null) {
+					stack.push(curr);
+					curr = curr.getLeft();
+				}
+				curr = stack.pop();
+				items.add(curr.getData());
+				curr = curr.getRight();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		return items.iterator();
+	}
+
 	public T searchMinValue (BSTNode<T> node) {
 		// To find the minimum data within the subtree of node 
 		 if(node.getLeft() == null)
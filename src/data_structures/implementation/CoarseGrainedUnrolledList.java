@@ -0,0 +1,156 @@
+package data_structures.implementation;
+
+import data_structures.Sorted;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Unrolled list under one lock: every node holds up to
+ * UnrolledNode.CAPACITY items, so a walk under the lock follows a pointer
+ * per node instead of per item. A full node is split in two; a node that
+ * drops below UnrolledNode.MIN_ITEMS is merged with or refilled from its
+ * successor, and an empty node is unlinked.
+ */
+public class CoarseGrainedUnrolledList<T extends Comparable<T>> implements Sorted<T>, Iterable<T>, Contended {
+
+	// never holds items; the first node with items is head.next
+	private final UnrolledNode<T> head = new UnrolledNode<T>();
+	private final Lock lock = new ReentrantLock();
+	// only written under lock, volatile so size() needs no lock
+	private volatile int size = 0;
+	private final ContentionStats stats = new ContentionStats();
+
+	public void add(T t) {
+		stats.lock(lock);
+		try {
+			addLocked(head, t);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void remove(T t) {
+		stats.lock(lock);
+		try {
+			removeLocked(t);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean contains(T t) {
+		stats.lock(lock);
+		try {
+			UnrolledNode<T> curr = head.next;
+			while (curr != null && curr.last().compareTo(t) < 0)
+				curr = curr.next;
+			return curr != null && curr.contains(t);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void addAll(Collection<T> ts) {
+		// sorted, so every key is searched for from the node the previous one went to
+		List<T> batch = new ArrayList<T>(ts);
+		Collections.sort(batch);
+		stats.lock(lock);
+		try {
+			UnrolledNode<T> start = head;
+			for (T t : batch)
+				start = addLocked(start, t);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void removeAll(Collection<T> ts) {
+		stats.lock(lock);
+		try {
+			for (T t : ts)
+				removeLocked(t);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/* caller holds lock; start is head or a node holding no items above t. Returns the node t went to */
+	private UnrolledNode<T> addLocked(UnrolledNode<T> start, T t) {
+		UnrolledNode<T> curr = start == head ? head.next : start;
+		if (curr == null) {
+			curr = new UnrolledNode<T>();
+			head.next = curr;
+		} else {
+			while (curr.next != null && curr.last().compareTo(t) < 0)
+				curr = curr.next;
+			if (curr.isFull()) {
+				UnrolledNode<T> upper = curr.split();
+				if (upper.get(0).compareTo(t) <= 0)
+					curr = upper;
+			}
+		}
+		curr.insert(t);
+		size++;
+		return curr;
+	}
+
+	/* caller holds lock */
+	private void removeLocked(T t) {
+		UnrolledNode<T> pred = head, curr = head.next;
+		// the first node whose last item is not below t holds the first t, if any
+		while (curr != null && curr.last().compareTo(t) < 0) {
+			pred = curr;
+			curr = curr.next;
+		}
+		if (curr == null || !curr.remove(t))
+			return;
+		size--;
+		if (curr.count == 0) {
+			pred.next = curr.next;
+		} else if (curr.count < UnrolledNode.MIN_ITEMS) {
+			if (curr.next != null)
+				curr.mergeNext();
+			else if (pred != head && pred.count + curr.count <= UnrolledNode.CAPACITY)
+				pred.mergeNext();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public ContentionStats contentionStats() {
+		return stats;
+	}
+
+	/* Iterates over a copy taken under the lock, so it never sees later updates */
+	public Iterator<T> iterator() {
+		List<T> items = new ArrayList<T>(size);
+		stats.lock(lock);
+		try {
+			for (UnrolledNode<T> curr = head.next; curr != null; curr = curr.next)
+				curr.addTo(items);
+		}
+		finally {
+			lock.unlock();
+		}
+		return items.iterator();
+	}
+
+	public String toString() {
+		List<T> items = new ArrayList<T>();
+		for (T t : this)
+			items.add(t);
+		return items.toString();
+	}
+}
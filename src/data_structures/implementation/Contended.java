@@ -0,0 +1,6 @@
+package data_structures.implementation;
+
+/* A structure that counts its contention in a ContentionStats */
+public interface Contended {
+	ContentionStats contentionStats();
+}
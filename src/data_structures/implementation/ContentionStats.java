@@ -0,0 +1,116 @@
+package data_structures.implementation;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Contention counters of one structure instance. Every counter is a
+ * LongAdder, so a thread mostly updates a cell of its own and counting
+ * stays on in normal runs; the uncontended lock path costs one tryLock()
+ * and one increment. Only the counters the structure uses move: locks for
+ * the lock-based ones, CAS failures and retries for the lock-free list,
+ * helping for the lock-free tree.
+ */
+public final class ContentionStats implements ContentionStatsMBean {
+	private final LongAdder lockAcquisitions = new LongAdder();
+	private final LongAdder contendedAcquisitions = new LongAdder();
+	private final LongAdder lockWaitNanos = new LongAdder();
+	private final LongAdder casFailures = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private final LongAdder helpIFlag = new LongAdder();
+	private final LongAdder helpDFlag = new LongAdder();
+	private final LongAdder helpMark = new LongAdder();
+
+	/* Takes lock, timing the wait only when it is held by another thread */
+	void lock(Lock lock) {
+		lockAcquisitions.increment();
+		if (lock.tryLock())
+			return;
+		long start = System.nanoTime();
+		lock.lock();
+		contendedAcquisitions.increment();
+		lockWaitNanos.add(System.nanoTime() - start);
+	}
+
+	void casFailed() {
+		casFailures.increment();
+	}
+
+	void retried() {
+		retries.increment();
+	}
+
+	void helped(int state) {
+		switch (state) {
+			case LockFreeTree.IFLAG:
+				helpIFlag.increment();
+				break;
+			case LockFreeTree.DFLAG:
+				helpDFlag.increment();
+				break;
+			case LockFreeTree.MARK:
+				helpMark.increment();
+				break;
+		}
+	}
+
+	public long getLockAcquisitions() {
+		return lockAcquisitions.sum();
+	}
+
+	public long getContendedAcquisitions() {
+		return contendedAcquisitions.sum();
+	}
+
+	public long getLockWaitNanos() {
+		return lockWaitNanos.sum();
+	}
+
+	public long getCasFailures() {
+		return casFailures.sum();
+	}
+
+	public long getRetries() {
+		return retries.sum();
+	}
+
+	public long getHelpIFlag() {
+		return helpIFlag.sum();
+	}
+
+	public long getHelpDFlag() {
+		return helpDFlag.sum();
+	}
+
+	public long getHelpMark() {
+		return helpMark.sum();
+	}
+
+	public void reset() {
+		lockAcquisitions.reset();
+		contendedAcquisitions.reset();
+		lockWaitNanos.reset();
+		casFailures.reset();
+		retries.reset();
+		helpIFlag.reset();
+		helpDFlag.reset();
+		helpMark.reset();
+	}
+
+	/* Registers these counters with the platform MBean server as data_structures:type=ContentionStats,name=<name> */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("data_structures:type=ContentionStats,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	public String toString() {
+		return String.format("locks: %d (%d contended, %d ms waiting), CAS failures: %d, retries: %d, helped: %d iflag, %d dflag, %d mark",
+				getLockAcquisitions(), getContendedAcquisitions(), getLockWaitNanos() / 1000000,
+				getCasFailures(), getRetries(), getHelpIFlag(), getHelpDFlag(), getHelpMark());
+	}
+}
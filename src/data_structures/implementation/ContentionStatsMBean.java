@@ -0,0 +1,22 @@
+package data_structures.implementation;
+
+/* Management view of a ContentionStats, registered by Main */
+public interface ContentionStatsMBean {
+	long getLockAcquisitions();
+
+	long getContendedAcquisitions();
+
+	long getLockWaitNanos();
+
+	long getCasFailures();
+
+	long getRetries();
+
+	long getHelpIFlag();
+
+	long getHelpDFlag();
+
+	long getHelpMark();
+
+	void reset();
+}
@@ -0,0 +1,442 @@
+package data_structures.implementation;
+
+import data_structures.Sorted;
+import data_structures.SortedSnapshot;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Makes the adds and removes on a structure survive a crash. Every
+ * mutation is appended to a write-ahead log in directory, as one byte for
+ * the operation and the key, and the log is forced to disk in groups:
+ * the records are gathered in memory and whoever holds the flush lock
+ * writes and forces all that were gathered, so threads waiting behind it
+ * usually find their record forced already. How long a mutation waits
+ * for that is set by its Durability.
+ *
+ * A mutation holds the lock of its key's stripe from appending the
+ * record to applying it, so the log has the mutations of one key in the
+ * order they were applied; other keys commute.
+ *
+ * checkpoint() saves a SortedSnapshot of the structure and starts a new,
+ * empty log. Files are numbered by generation: snapshot.<n> holds the
+ * keys at the start of log.<n>, and a snapshot only appears under its
+ * name once it is complete. Opening a directory loads the latest
+ * snapshot, replays its log in batches, and drops a record that was only
+ * partly written when the process died.
+ *
+ * A failed write or force of the log is sticky: the records it held may
+ * be lost, so every later mutation, wait and checkpoint fails with it.
+ *
+ * Reads go straight to the structure, which must not be changed other
+ * than through this wrapper.
+ */
+public class DurableSorted<S extends Sorted<Integer> & Iterable<Integer>> implements Sorted<Integer>, Iterable<Integer>, Closeable {
+	public enum Durability {
+		/* the record is forced before the change is applied, so no change is ever seen that a crash could lose */
+		SYNC,
+		/* the change is applied first; the mutation returns once a force, shared with others, covers it */
+		GROUP,
+		/* the mutation returns at once; the log is forced every ASYNC_INTERVAL ms, a crash loses the last ones */
+		ASYNC
+	}
+
+	private static final byte ADD = 1, REMOVE = 2;
+	// operation byte and key
+	private static final int RECORD = 1 + 4;
+	private static final int STRIPES = 64;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final long ASYNC_INTERVAL = 10;
+
+	private final S sorted;
+	private final Path directory;
+	private final Durability durability;
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+	// guards pending and appended
+	private final ReentrantLock appendLock = new ReentrantLock();
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+	private long appended = 0;
+
+	// guards channel, generation and spare; the holder forces for everyone
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+	private FileChannel channel;
+	private long generation;
+	// records up to this one are on disk
+	private volatile long durable = 0;
+	// the first write or force of the log that failed
+	private volatile IOException failure;
+	// set by close(); checked by mutations under their stripe lock
+	private volatile boolean closed = false;
+
+	// never interrupted: an interrupt during channel I/O closes the channel
+	private final Thread flusher;
+
+	/* Recovers the contents saved in directory into sorted, which should be empty, and goes on logging there */
+	public DurableSorted(S sorted, Path directory, Durability durability) throws IOException {
+		this.sorted = sorted;
+		this.directory = directory;
+		this.durability = durability;
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new ReentrantLock();
+
+		Files.createDirectories(directory);
+		generation = latestSnapshot();
+		if (Files.exists(snapshot(generation)))
+			SortedSnapshot.load(snapshot(generation), sorted);
+		replay(log(generation));
+		deleteBefore(generation);
+		channel = openLog(generation);
+
+		if (durability == Durability.ASYNC) {
+			flusher = new Thread(this::flushPeriodically, "DurableSorted flusher");
+			flusher.setDaemon(true);
+			flusher.start();
+		} else {
+			flusher = null;
+		}
+	}
+
+	public void add(Integer t) {
+		awaitReturn(mutate(ADD, t));
+	}
+
+	public void remove(Integer t) {
+		awaitReturn(mutate(REMOVE, t));
+	}
+
+	public boolean contains(Integer t) {
+		return sorted.contains(t);
+	}
+
+	public int size() {
+		return sorted.size();
+	}
+
+	// one wait for the whole batch instead of one per key
+	public void addAll(Collection<Integer> ts) {
+		long last = 0;
+		for (Integer t : ts)
+			last = mutate(ADD, t);
+		awaitReturn(last);
+	}
+
+	public void removeAll(Collection<Integer> ts) {
+		long last = 0;
+		for (Integer t : ts)
+			last = mutate(REMOVE, t);
+		awaitReturn(last);
+	}
+
+	public Iterator<Integer> iterator() {
+		return sorted.iterator();
+	}
+
+	public String toString() {
+		return sorted.toString();
+	}
+
+	/*
+	 * Saves the structure as the snapshot of a new generation and starts
+	 * its log empty. Mutations wait for it to finish.
+	 */
+	public void checkpoint() throws IOException {
+		// with every stripe held, each logged mutation has been applied and none is in between
+		for (ReentrantLock stripe : stripes)
+			stripe.lock();
+		try {
+			if (closed)
+				throw new IllegalStateException("closed");
+			flushLock.lock();
+			try {
+				flushLocked();
+				long next = generation + 1;
+				Path tmp = directory.resolve("snapshot.tmp");
+				SortedSnapshot.save(sorted, tmp);
+				Files.move(tmp, snapshot(next), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				channel.close();
+				channel = openLog(next);
+				generation = next;
+				deleteBefore(next);
+			}
+			finally {
+				flushLock.unlock();
+			}
+		}
+		finally {
+			for (int i = STRIPES - 1; i >= 0; i--)
+				stripes[i].unlock();
+		}
+	}
+
+	/*
+	 * Forces what was logged and closes the log. Later adds and removes
+	 * fail with IllegalStateException and leave the structure as it is;
+	 * reads go on working.
+	 */
+	public void close() throws IOException {
+		// once every stripe has been held, no mutation can get past the closed check anymore
+		closed = true;
+		for (ReentrantLock stripe : stripes) {
+			stripe.lock();
+			stripe.unlock();
+		}
+		if (flusher != null) {
+			LockSupport.unpark(flusher);
+			boolean interrupted = false;
+			while (true) {
+				try {
+					flusher.join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		flushLock.lock();
+		try {
+			if (!channel.isOpen())
+				return;
+			try {
+				flushLocked();
+			}
+			finally {
+				channel.close();
+			}
+		}
+		finally {
+			flushLock.unlock();
+		}
+	}
+
+	/* Logs and applies one mutation; returns the number of its record */
+	private long mutate(byte op, int key) {
+		ReentrantLock stripe = stripes[(key ^ (key >>> 16)) & (STRIPES - 1)];
+		stripe.lock();
+		try {
+			if (closed)
+				throw new IllegalStateException("closed");
+			if (failure != null)
+				throw new UncheckedIOException("the log failed earlier", failure);
+			long seq = append(op, key);
+			if (durability == Durability.SYNC)
+				awaitDurable(seq);
+			if (op == ADD)
+				sorted.add(key);
+			else
+				sorted.remove(key);
+			return seq;
+		}
+		finally {
+			stripe.unlock();
+		}
+	}
+
+	private void awaitReturn(long seq) {
+		if (durability == Durability.GROUP)
+			awaitDurable(seq);
+	}
+
+	private long append(byte op, int key) {
+		appendLock.lock();
+		try {
+			if (pending.remaining() < RECORD) {
+				ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+				pending.flip();
+				larger.put(pending);
+				pending = larger;
+			}
+			pending.put(op).putInt(key);
+			return ++appended;
+		}
+		finally {
+			appendLock.unlock();
+		}
+	}
+
+	/*
+	 * Group commit: a thread that gets the flush lock forces all records
+	 * gathered so far, its own and those of the threads queued behind it,
+	 * which then find theirs durable without forcing again.
+	 */
+	private void awaitDurable(long seq) {
+		while (durable < seq) {
+			if (failure != null)
+				throw new UncheckedIOException("the log failed earlier", failure);
+			flushLock.lock();
+			try {
+				if (durable < seq)
+					flushLocked();
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			finally {
+				flushLock.unlock();
+			}
+		}
+	}
+
+	/* caller holds flushLock; writes and forces everything appended so far */
+	private void flushLocked() throws IOException {
+		if (failure != null)
+			throw new IOException("the log failed earlier", failure);
+		ByteBuffer batch;
+		long upTo;
+		appendLock.lock();
+		try {
+			// appends go on into the spare buffer while this batch is written
+			batch = pending;
+			pending = spare;
+			upTo = appended;
+		}
+		finally {
+			appendLock.unlock();
+		}
+		try {
+			batch.flip();
+			if (batch.hasRemaining()) {
+				while (batch.hasRemaining())
+					channel.write(batch);
+				channel.force(false);
+			}
+		}
+		catch (IOException e) {
+			// durable stays where it was: the records of this batch may not be on disk
+			failure = e;
+			throw e;
+		}
+		finally {
+			batch.clear();
+			spare = batch;
+		}
+		durable = upTo;
+	}
+
+	/* Forces the log every ASYNC_INTERVAL ms until closed or the log fails; close() does the last flush */
+	private void flushPeriodically() {
+		while (!closed && failure == null) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ASYNC_INTERVAL));
+			if (closed)
+				return;
+			flushLock.lock();
+			try {
+				flushLocked();
+			}
+			catch (IOException e) {
+				// kept in failure, where the next mutation finds it
+				return;
+			}
+			finally {
+				flushLock.unlock();
+			}
+		}
+	}
+
+	/* Applies the complete records of log, runs of adds or removes as one batch, and cuts off the rest */
+	private void replay(Path log) throws IOException {
+		if (!Files.exists(log))
+			return;
+		try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long valid = 0;
+			if (in.size() >= RECORD) {
+				MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+				List<Integer> batch = new ArrayList<Integer>();
+				byte batchOp = ADD;
+				while (buffer.remaining() >= RECORD) {
+					byte op = buffer.get();
+					if (op != ADD && op != REMOVE)
+						break;
+					if (op != batchOp) {
+						apply(batchOp, batch);
+						batchOp = op;
+					}
+					batch.add(buffer.getInt());
+					valid += RECORD;
+				}
+				apply(batchOp, batch);
+			}
+			if (valid < in.size())
+				in.truncate(valid);
+		}
+	}
+
+	private void apply(byte op, List<Integer> batch) {
+		if (op == ADD)
+			sorted.addAll(batch);
+		else
+			sorted.removeAll(batch);
+		batch.clear();
+	}
+
+	private FileChannel openLog(long generation) throws IOException {
+		FileChannel log = FileChannel.open(log(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		log.position(log.size());
+		return log;
+	}
+
+	/* Generation of the newest complete snapshot, 0 when there is none */
+	private long latestSnapshot() throws IOException {
+		long latest = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "snapshot.*")) {
+			for (Path file : files) {
+				long n = generationOf(file);
+				if (n > latest)
+					latest = n;
+			}
+		}
+		return latest;
+	}
+
+	private void deleteBefore(long generation) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				long n = generationOf(file);
+				if (n >= 0 && n < generation)
+					Files.delete(file);
+			}
+		}
+		Files.deleteIfExists(directory.resolve("snapshot.tmp"));
+	}
+
+	/* n for snapshot.<n> and log.<n>, -1 for any other file */
+	private static long generationOf(Path file) {
+		String name = file.getFileName().toString();
+		int dot = name.indexOf('.');
+		String prefix = name.substring(0, dot + 1);
+		if (!prefix.equals("snapshot.") && !prefix.equals("log."))
+			return -1;
+		try {
+			return Long.parseLong(name.substring(dot + 1));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private Path snapshot(long generation) {
+		return directory.resolve("snapshot." + generation);
+	}
+
+	private Path log(long generation) {
+		return directory.resolve("log." + generation);
+	}
+}
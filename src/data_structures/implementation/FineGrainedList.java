@@ -1,10 +1,16 @@
 package data_structures.implementation;
 import data_structures.Sorted;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-public class FineGrainedList<T extends Comparable<T>> implements Sorted<T> {
+public class FineGrainedList<T extends Comparable<T>> implements Sorted<T>, Contended {
     private FineNode<T> head;
+    private final SizeCounter size = new SizeCounter();
+    private final ContentionStats stats = new ContentionStats();
 
     public FineGrainedList() {
         head = new HeadNode();
@@ -30,6 +36,7 @@ public class FineGrainedList<T extends Comparable<T>> implements Sorted<T> {
                 FineNode<T> newNode = new ListNode(t);
                 newNode.next = curr;
                 pred.next = newNode;
+                size.increment();
             }
             finally {
                 curr.unlock();
@@ -54,9 +61,102 @@ public class FineGrainedList<T extends Comparable<T>> implements Sorted<T> {
                     curr = curr.next;
                     curr.lock();
                 }
-                if(curr.compareTo(t) == 0)
+                if(curr.compareTo(t) == 0) {
                     // when removeNode found, remove it.
                     pred.next = curr.next;
+                    size.decrement();
+                }
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    public void addAll(Collection<T> ts) {
+        // sort the batch, then add it in one hand-over-hand sweep
+        List<T> batch = new ArrayList<T>(ts);
+        Collections.sort(batch);
+        FineNode<T> pred = head;
+        head.lock();
+        try {
+            FineNode<T> curr = pred.next;
+            curr.lock();
+            try {
+                for (T t : batch) {
+                    while(curr.compareTo(t) < 0) {
+                        pred.unlock();
+                        pred = curr;
+                        curr = curr.next;
+                        curr.lock();
+                    }
+                    // the new node becomes pred, so it is locked before it is reachable
+                    FineNode<T> newNode = new ListNode(t);
+                    newNode.next = curr;
+                    newNode.lock();
+                    pred.next = newNode;
+                    size.increment();
+                    pred.unlock();
+                    pred = newNode;
+                }
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    public void removeAll(Collection<T> ts) {
+        List<T> batch = new ArrayList<T>(ts);
+        Collections.sort(batch);
+        FineNode<T> pred = head;
+        head.lock();
+        try {
+            FineNode<T> curr = pred.next;
+            curr.lock();
+            try {
+                for (T t : batch) {
+                    while(curr.compareTo(t) < 0) {
+                        pred.unlock();
+                        pred = curr;
+                        curr = curr.next;
+                        curr.lock();
+                    }
+                    if(curr.compareTo(t) == 0) {
+                        // unlink curr, then continue from its successor
+                        FineNode<T> removed = curr;
+                        pred.next = curr.next;
+                        curr = curr.next;
+                        curr.lock();
+                        removed.unlock();
+                        size.decrement();
+                    }
+                }
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    public boolean contains(T t) {
+        FineNode<T> pred = head;
+        head.lock();
+        try {
+            FineNode<T> curr = pred.next;
+            curr.lock();
+            try {
+                while(curr.compareTo(t) < 0) {
+                    // if current node is smaller than t, keep traversing
+                    pred.unlock();
+                    pred = curr;
+                    curr = curr.next;
+                    curr.lock();
+                }
+                return curr.compareTo(t) == 0;
             } finally {
                 curr.unlock();
             }
@@ -65,6 +165,14 @@ public class FineGrainedList<T extends Comparable<T>> implements Sorted<T> {
         }
     }
     
+    public int size() {
+        return size.get();
+    }
+
+    public ContentionStats contentionStats() {
+        return stats;
+    }
+
     public String toString() {
     	String output = "";
     	FineNode<T> pred = head;
@@ -109,7 +217,7 @@ public class FineGrainedList<T extends Comparable<T>> implements Sorted<T> {
     	}
     	
     	 public void lock() {
-             lock.lock();
+             stats.lock(lock);
          }
 
          public void unlock() {
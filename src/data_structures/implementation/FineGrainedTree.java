@@ -1,12 +1,26 @@
 package data_structures.implementation;
 
 import data_structures.Sorted;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
+public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T>, Contended {
    
     private FineNode root = new FineNode(null);
+    private final SizeCounter size = new SizeCounter();
+    private final ContentionStats stats = new ContentionStats();
+
+    public FineGrainedTree() {
+    }
+
+    /* A balanced tree holding items, built in O(n) when they are sorted already; see addAll */
+    public FineGrainedTree(Collection<T> items) {
+        addAll(items);
+    }
 
 	public void add(T t) {
         FineNode curr, pred = root, next;
@@ -20,6 +34,7 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
             if(root.left == null) {
                 // the tree is empty, create root node
                 root.left = new FineNode(t);
+                size.increment();
             } else { 
             	// traverse the tree until a free leaf is found.
                 curr = root.left;
@@ -36,6 +51,7 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
                                 curr.left = new FineNode(t);
                             else
                                 curr.right = new FineNode(t);
+                            size.increment();
                             return;
                         } else { 
                             // Continue traversal in the subtree
@@ -88,6 +104,7 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
                             // Case 3: removeNode without children, remove link from pred
                             replaceFineNode(curr, pred, null);
                         }
+                        size.decrement();
                         return;
                     } else { 
                     	// removeNode not yet found, continue traversal.
@@ -110,6 +127,43 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
         }
     }
 
+    public boolean contains(T t) {
+        FineNode curr, pred = root;
+
+        // Dummy FineNode for locking purposes
+    	// the actual root is root.left
+        root.lock();
+        try {
+            curr = root.left;
+            if(curr == null) {
+                return false;
+            }
+
+            curr.lock();
+            try {
+                while(true) {
+                    int cmp = curr.compareTo(t);
+                    if(cmp == 0) {
+                        return true;
+                    }
+                    // not yet found, continue traversal with lock coupling
+                    pred.unlock();
+                    pred = curr;
+                    curr = cmp > 0 ? curr.left : curr.right;
+
+                    if(curr == null)
+                        return false;
+
+                    curr.lock();
+                }
+            } finally {
+                if(curr != null)
+                    curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
   
     private T searchAndRemoveMinData(FineNode parent) {
         FineNode pred = parent, curr = parent.right;
@@ -147,6 +201,51 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
         }
     }
 
+    /*
+     * Into an empty tree the sorted batch is built as one balanced tree
+     * under the lock of the dummy root; otherwise every item is added on
+     * its own. Null items are skipped either way.
+     */
+    public void addAll(Collection<T> ts) {
+        root.lock();
+        try {
+            if (root.left == null) {
+                // only this path needs the items sorted
+                List<T> batch = new ArrayList<T>(ts);
+                batch.removeIf(t -> t == null);
+                Collections.sort(batch);
+                root.left = BalancedBuild.nodeTree(new BalancedBuild.Nodes<FineNode>() {
+                    public FineNode leaf(int i) {
+                        return new FineNode(batch.get(i));
+                    }
+
+                    public FineNode inner(int mid, FineNode left, FineNode right) {
+                        FineNode node = new FineNode(batch.get(mid));
+                        node.left = left;
+                        node.right = right;
+                        return node;
+                    }
+                }, batch.size());
+                size.add(batch.size());
+                return;
+            }
+        } finally {
+            root.unlock();
+        }
+        // in the given order: sorted, they would make a chain
+        for (T t : ts)
+            if (t != null)
+                add(t);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public ContentionStats contentionStats() {
+        return stats;
+    }
+
     public String toString() {
         return root.isLeaf() ? "[]" : "["+root.left.printString(FineNode.SIZE)+"]";
     }
@@ -168,7 +267,7 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
         }
 
         public void lock() {
-            lock.lock();
+            stats.lock(lock);
         }
 
         public void unlock() {
@@ -0,0 +1,152 @@
+package data_structures.implementation;
+
+import data_structures.Sorted;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Unrolled list with a lock per node, taken hand over hand as in
+ * FineGrainedList; a walk locks a node per UnrolledNode.CAPACITY items
+ * instead of one per item. Splitting a node only needs its own lock, as
+ * the new node is reached through it. Unlinking or merging a node is done
+ * holding its predecessor and the node, and refilling from a successor
+ * holding the node and its successor.
+ */
+public class FineGrainedUnrolledList<T extends Comparable<T>> implements Sorted<T>, Contended {
+
+    // never holds items; the first node with items is head.next
+    private final UnrolledNode<T> head = new UnrolledNode<T>();
+    private final SizeCounter size = new SizeCounter();
+    private final ContentionStats stats = new ContentionStats();
+
+    public void add(T t) {
+        UnrolledNode<T> pred = head;
+        stats.lock(pred.lock);
+        try {
+            UnrolledNode<T> curr = pred.next;
+            if (curr == null) {
+                // empty list, the new node is only reachable through head
+                curr = new UnrolledNode<T>();
+                curr.insert(t);
+                head.next = curr;
+                size.increment();
+                return;
+            }
+            stats.lock(curr.lock);
+            try {
+                while (curr.next != null && curr.last().compareTo(t) < 0) {
+                    pred.lock.unlock();
+                    pred = curr;
+                    curr = curr.next;
+                    stats.lock(curr.lock);
+                }
+                if (curr.isFull()) {
+                    // the upper half is only reachable through curr, which we hold
+                    UnrolledNode<T> upper = curr.split();
+                    if (upper.get(0).compareTo(t) <= 0) {
+                        upper.insert(t);
+                        size.increment();
+                        return;
+                    }
+                }
+                curr.insert(t);
+                size.increment();
+            }
+            finally {
+                curr.lock.unlock();
+            }
+        }
+        finally {
+            pred.lock.unlock();
+        }
+    }
+
+    public void remove(T t) {
+        UnrolledNode<T> pred = head;
+        stats.lock(pred.lock);
+        try {
+            UnrolledNode<T> curr = pred.next;
+            if (curr == null)
+                return;
+            stats.lock(curr.lock);
+            try {
+                // the first node whose last item is not below t holds the first t, if any
+                while (curr.next != null && curr.last().compareTo(t) < 0) {
+                    pred.lock.unlock();
+                    pred = curr;
+                    curr = curr.next;
+                    stats.lock(curr.lock);
+                }
+                if (!curr.remove(t))
+                    return;
+                size.decrement();
+                if (curr.count == 0) {
+                    pred.next = curr.next;
+                } else if (curr.count < UnrolledNode.MIN_ITEMS) {
+                    UnrolledNode<T> succ = curr.next;
+                    if (succ != null) {
+                        stats.lock(succ.lock);
+                        try {
+                            curr.mergeNext();
+                        }
+                        finally {
+                            succ.lock.unlock();
+                        }
+                    } else if (pred != head && pred.count + curr.count <= UnrolledNode.CAPACITY) {
+                        pred.mergeNext();
+                    }
+                }
+            }
+            finally {
+                curr.lock.unlock();
+            }
+        }
+        finally {
+            pred.lock.unlock();
+        }
+    }
+
+    public boolean contains(T t) {
+        UnrolledNode<T> curr = head;
+        stats.lock(curr.lock);
+        try {
+            while (curr.next != null && (curr == head || curr.last().compareTo(t) < 0)) {
+                UnrolledNode<T> next = curr.next;
+                stats.lock(next.lock);
+                curr.lock.unlock();
+                curr = next;
+            }
+            return curr.contains(t);
+        }
+        finally {
+            curr.lock.unlock();
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public ContentionStats contentionStats() {
+        return stats;
+    }
+
+    public String toString() {
+        List<T> items = new ArrayList<T>();
+        UnrolledNode<T> curr = head;
+        stats.lock(curr.lock);
+        try {
+            while (curr.next != null) {
+                UnrolledNode<T> next = curr.next;
+                stats.lock(next.lock);
+                curr.lock.unlock();
+                curr = next;
+                curr.addTo(items);
+            }
+        }
+        finally {
+            curr.lock.unlock();
+        }
+        return items.toString();
+    }
+}
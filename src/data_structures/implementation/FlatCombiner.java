@@ -0,0 +1,187 @@
+package data_structures.implementation;
+
+import data_structures.Sorted;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Flat combining (Hendler, Incze, Shavit and Tzafrir) around a sequential
+ * structure. A thread publishes its operation in its own slot and then
+ * either becomes the combiner, by getting the lock with tryLock(), or
+ * waits until a combiner has done its operation. The combiner collects
+ * the pending adds and removes of all slots into one batch each and
+ * applies them with a single addAll/removeAll, so the structure stays
+ * in one thread's cache and the lock changes hands once per batch
+ * instead of once per operation.
+ *
+ * All pending operations overlap the combining pass, so applying them
+ * in any order is linearizable.
+ *
+ * As in the paper, slots age: the combiner unlinks a slot that has been
+ * idle for IDLE_PASSES passes, so slots of threads that are gone do not
+ * stay in the list. It retires the slot first by a CAS of its op from
+ * NONE to RETIRED, which fails when the owner has just published an
+ * operation; an owner that finds its slot retired pushes it again.
+ */
+public abstract class FlatCombiner<T extends Comparable<T>> implements Sorted<T> {
+	private static final int NONE = 0, ADD = 1, REMOVE = 2, CONTAINS = 3, RETIRED = 4;
+	// passes a slot may go without an operation before it is unlinked
+	private static final int IDLE_PASSES = 256;
+	// how long a waiting thread spins before yielding the processor to the combiner
+	private static final int SPINS = 64;
+
+	private final Sorted<T> sorted;
+	private final ReentrantLock lock = new ReentrantLock();
+	// publication list; pushed by the threads, unlinked only by the combiner
+	private final AtomicReference<Slot<T>> slots = new AtomicReference<Slot<T>>();
+	private final ThreadLocal<Slot<T>> slot = ThreadLocal.withInitial(this::register);
+	// number of combining passes so far; only used by the combiner
+	private long passes = 0;
+
+	private static final VarHandle OP;
+	static {
+		try {
+			OP = MethodHandles.lookup().findVarHandle(Slot.class, "op", int.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/* sorted is only called by one combiner at a time, apart from addAll, removeAll, size and toString */
+	protected FlatCombiner(Sorted<T> sorted) {
+		this.sorted = sorted;
+	}
+
+	public void add(T t) {
+		combine(ADD, t);
+	}
+
+	public void remove(T t) {
+		combine(REMOVE, t);
+	}
+
+	public boolean contains(T t) {
+		return combine(CONTAINS, t);
+	}
+
+	// a batch is merged in one lock hold by the structure itself already
+	public void addAll(Collection<T> ts) {
+		sorted.addAll(ts);
+	}
+
+	public void removeAll(Collection<T> ts) {
+		sorted.removeAll(ts);
+	}
+
+	public int size() {
+		return sorted.size();
+	}
+
+	public String toString() {
+		return sorted.toString();
+	}
+
+	private Slot<T> register() {
+		Slot<T> slot = new Slot<T>();
+		push(slot);
+		return slot;
+	}
+
+	private void push(Slot<T> slot) {
+		slot.lastPass = -1;
+		do {
+			slot.next = slots.get();
+		} while (!slots.compareAndSet(slot.next, slot));
+	}
+
+	private boolean combine(int op, T t) {
+		Slot<T> mine = slot.get();
+		mine.item = t;
+		// the CAS publishes item to the combiner; it fails only when the slot was retired
+		while (!OP.compareAndSet(mine, NONE, op)) {
+			// unlinked, and no combiner looks at it anymore
+			mine.op = NONE;
+			push(mine);
+		}
+		int spins = 0;
+		while (true) {
+			if (lock.tryLock()) {
+				try {
+					// our own slot is in the list, so this pass does our operation too
+					combinePass();
+				} finally {
+					lock.unlock();
+				}
+			}
+			// served; an idle slot may be retired before we get to see that
+			int state = mine.op;
+			if (state == NONE || state == RETIRED) {
+				mine.item = null;
+				return mine.result;
+			}
+			if (++spins % SPINS == 0) {
+				Thread.yield();
+			} else {
+				Thread.onSpinWait();
+			}
+		}
+	}
+
+	/* caller holds lock */
+	private void combinePass() {
+		List<T> adds = new ArrayList<T>();
+		List<T> removes = new ArrayList<T>();
+		List<Slot<T>> served = new ArrayList<Slot<T>>();
+		long pass = ++passes;
+		Slot<T> pred = null;
+		for (Slot<T> s = slots.get(), next; s != null; s = next) {
+			// read before retiring s, after which its owner may push it again
+			next = s.next;
+			int op = s.op;
+			if (op == NONE) {
+				if (s.lastPass < 0) {
+					s.lastPass = pass;
+				} else if (pred != null && pass - s.lastPass > IDLE_PASSES && OP.compareAndSet(s, NONE, RETIRED)) {
+					// the head slot stays, it may be getting a new slot pushed in front of it
+					pred.next = next;
+					continue;
+				}
+				pred = s;
+				continue;
+			}
+			pred = s;
+			if (op == ADD) {
+				adds.add(s.item);
+			} else if (op == REMOVE) {
+				removes.add(s.item);
+			} else if (op == CONTAINS) {
+				s.result = sorted.contains(s.item);
+			} else {
+				continue;
+			}
+			s.lastPass = pass;
+			served.add(s);
+		}
+		if (!adds.isEmpty())
+			sorted.addAll(adds);
+		if (!removes.isEmpty())
+			sorted.removeAll(removes);
+		// releases the waiting threads, after their results are written
+		for (Slot<T> s : served)
+			s.op = NONE;
+	}
+
+	private static final class Slot<T> {
+		volatile int op = NONE;
+		T item;
+		boolean result;
+		Slot<T> next;
+		// pass that last found an operation here, -1 before the first; only used by the combiner
+		long lastPass;
+	}
+}
@@ -0,0 +1,8 @@
+package data_structures.implementation;
+
+/* CoarseGrainedList behind a flat combiner; a combining pass merges its sorted batch into the list in one sweep */
+public class FlatCombiningList<T extends Comparable<T>> extends FlatCombiner<T> {
+	public FlatCombiningList() {
+		super(new CoarseGrainedList<T>());
+	}
+}
@@ -0,0 +1,8 @@
+package data_structures.implementation;
+
+/* CoarseGrainedTree behind a flat combiner; a combining pass inserts its batch median first */
+public class FlatCombiningTree<T extends Comparable<T>> extends FlatCombiner<T> {
+	public FlatCombiningTree() {
+		super(new CoarseGrainedTree<T>());
+	}
+}
@@ -0,0 +1,39 @@
+package data_structures.implementation;
+
+public class IntBSTNode {
+
+	public int data;
+	private IntBSTNode left;
+	private IntBSTNode right;
+
+	/* Constructor */
+	public IntBSTNode(int data) {
+		this.data = data;
+	}
+
+	/* Functions to set data or nodes */
+	public void setData(int data) {
+		this.data = data;
+	}
+
+	public void setLeft(IntBSTNode left) {
+		this.left = left;
+	}
+
+	public void setRight(IntBSTNode right) {
+		this.right = right;
+	}
+
+	/* Functions to get data or nodes */
+	public int getData() {
+		return this.data;
+	}
+
+	public IntBSTNode getLeft() {
+		return this.left;
+	}
+
+	public IntBSTNode getRight() {
+		return this.right;
+	}
+}
@@ -0,0 +1,170 @@
+package data_structures.implementation;
+
+import data_structures.IntSorted;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class IntCoarseGrainedList implements IntSorted {
+
+	private IntNode _head;
+	private IntNode _tail;
+	private Lock _lock = new ReentrantLock();
+	// only written under _lock, volatile so size() needs no lock
+	private volatile int _size = 0;
+
+	public IntCoarseGrainedList() {
+		// the sentinels are recognized by reference, so every int is a valid key
+		_head = new IntNode(Integer.MIN_VALUE);
+		_tail = new IntNode(Integer.MAX_VALUE);
+		_head.next = _tail;
+	}
+
+	public void add(int key) {
+		IntNode prev, curr;
+		_lock.lock();
+		try
+		{
+			prev = _head;
+			curr = _head.next;
+			while (curr.key < key)
+			{
+				//finding the place to add the element
+				prev = curr;
+				curr = curr.next;
+			}
+			IntNode node = new IntNode(key);
+			node.next = curr;
+			prev.next = node;
+			_size++;
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public void remove(int key) {
+		IntNode prev, curr;
+		_lock.lock();
+		try
+		{
+			prev = _head;
+			curr = prev.next;
+			while (curr.key < key)
+			{
+				prev = curr;
+				curr = curr.next;
+			}
+			if (key == curr.key && curr != _tail)
+			{
+				prev.next = curr.next;
+				_size--;
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public void addAll(int[] keys) {
+		// a sorted batch is merged into the list in one walk
+		int[] batch = keys.clone();
+		Arrays.sort(batch);
+		IntNode prev, curr;
+		_lock.lock();
+		try
+		{
+			prev = _head;
+			curr = _head.next;
+			for (int key : batch)
+			{
+				while (curr.key < key)
+				{
+					prev = curr;
+					curr = curr.next;
+				}
+				IntNode node = new IntNode(key);
+				node.next = curr;
+				prev.next = node;
+				prev = node;
+				_size++;
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public void removeAll(int[] keys) {
+		int[] batch = keys.clone();
+		Arrays.sort(batch);
+		IntNode prev, curr;
+		_lock.lock();
+		try
+		{
+			prev = _head;
+			curr = _head.next;
+			for (int key : batch)
+			{
+				while (curr.key < key)
+				{
+					prev = curr;
+					curr = curr.next;
+				}
+				if (key == curr.key && curr != _tail)
+				{
+					prev.next = curr.next;
+					curr = curr.next;
+					_size--;
+				}
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public boolean contains(int key) {
+		IntNode curr;
+		_lock.lock();
+		try
+		{
+			curr = _head.next;
+			while (curr.key < key)
+			{
+				curr = curr.next;
+			}
+			return key == curr.key && curr != _tail;
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public String toString() {
+		StringBuilder ret = new StringBuilder("[");
+		_lock.lock();
+		try
+		{
+			for (IntNode curr = _head.next; curr != _tail; curr = curr.next) {
+				ret.append(curr.key);
+				if (curr.next != _tail)
+					ret.append(", ");
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+		return ret.append("]").toString();
+	}
+}
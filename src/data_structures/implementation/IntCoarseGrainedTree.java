@@ -0,0 +1,272 @@
+package data_structures.implementation;
+
+import data_structures.IntSorted;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+public class IntCoarseGrainedTree implements IntSorted {
+
+	private IntBSTNode root;
+
+	private Lock lock;
+
+	// only written under lock, volatile so size() needs no lock
+	private volatile int size = 0;
+
+	/* Constructor */
+	public IntCoarseGrainedTree() {
+		this.root = null;
+		lock = new ReentrantLock();
+	}
+
+	public void add(int key) {
+		lock.lock();
+		try {
+			addLocked(key);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void remove(int key) {
+		lock.lock();
+		try {
+			removeLocked(key);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void addAll(int[] keys) {
+		int[] batch = keys.clone();
+		Arrays.sort(batch);
+		lock.lock();
+		try {
+			addMedianFirst(batch, 0, batch.length);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void removeAll(int[] keys) {
+		int[] batch = keys.clone();
+		Arrays.sort(batch);
+		lock.lock();
+		try {
+			// the dummy node stands in for the parent of the root
+			IntBSTNode dummyNode = new IntBSTNode(0);
+			dummyNode.setLeft(root);
+			removeSorted(batch, 0, batch.length, dummyNode, true);
+			root = dummyNode.getLeft();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Adds the sorted batch[from..to) middle key first, so the batch forms a
+	 * balanced subtree instead of a chain of right children.
+	 */
+	private void addMedianFirst(int[] batch, int from, int to) {
+		if (from >= to)
+			return;
+		int mid = (from + to) >>> 1;
+		addLocked(batch[mid]);
+		addMedianFirst(batch, from, mid);
+		addMedianFirst(batch, mid + 1, to);
+	}
+
+	/* caller holds lock */
+	private void addLocked(int key) {
+		IntBSTNode addNode = new IntBSTNode(key);
+		size++;
+		if (root == null) {
+			// Add the new node when root is not available
+			this.root = addNode;
+			return;
+		}
+
+		IntBSTNode curr = root;
+		while (true) {
+			// When key is smaller than or equal to the current node,
+			// it goes to the left
+			if (key <= curr.getData()) {
+				if (curr.getLeft() == null) {
+					curr.setLeft(addNode);
+					return;
+				}
+				curr = curr.getLeft();
+			}
+			// When key is larger than the current node,
+			// it goes to the right
+			else {
+				if (curr.getRight() == null) {
+					curr.setRight(addNode);
+					return;
+				}
+				curr = curr.getRight();
+			}
+		}
+	}
+
+	/*
+	 * caller holds lock; removes the sorted batch[from..to) from the left or
+	 * right subtree of parent in one pass down the tree: every node splits
+	 * the keys between its two subtrees, so each node is visited once for
+	 * the whole batch instead of once per key.
+	 */
+	private void removeSorted(int[] batch, int from, int to, IntBSTNode parent, boolean left) {
+		IntBSTNode curr = left ? parent.getLeft() : parent.getRight();
+		while (curr != null && from < to) {
+			int data = curr.getData();
+			int lo = firstNotBelow(batch, from, to, data), hi = lo;
+			while (hi < to && batch[hi] == data)
+				hi++;
+			if (lo == hi) {
+				// the smaller keys go left, the larger ones right
+				removeSorted(batch, from, lo, curr, true);
+				parent = curr;
+				left = false;
+				curr = curr.getRight();
+				from = hi;
+				continue;
+			}
+			size--;
+			if (curr.getLeft() != null && curr.getRight() != null) {
+				// Case 1: removeNode has two children
+				// Replace its data with the minimum data in the right subtree,
+				// and unlink the node holding that minimum data. The other
+				// equal keys and the larger ones stay here: the new data may
+				// be one of them, and a smaller one goes left from here on
+				removeSorted(batch, from, lo, curr, true);
+				IntBSTNode minParent = curr, min = curr.getRight();
+				while (min.getLeft() != null) {
+					minParent = min;
+					min = min.getLeft();
+				}
+				curr.setData(min.getData());
+				if (minParent == curr)
+					minParent.setRight(min.getRight());
+				else
+					minParent.setLeft(min.getRight());
+				from = lo + 1;
+				continue;
+			}
+			// Case 2: removeNode has one child
+			// Case 3: removeNode has none children
+			// equal keys can be in either subtree, so the other ones go to the child
+			IntBSTNode child = (curr.getLeft() != null) ? curr.getLeft() : curr.getRight();
+			if (left)
+				parent.setLeft(child);
+			else
+				parent.setRight(child);
+			// the side that is gone needs no search
+			if (curr.getLeft() != null)
+				to = hi - 1;
+			else
+				from = lo + 1;
+			curr = child;
+		}
+	}
+
+	/* first index in the sorted batch[from..to) of a key not below key, to if there is none */
+	static int firstNotBelow(int[] batch, int from, int to, int key) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (batch[mid] < key)
+				from = mid + 1;
+			else
+				to = mid;
+		}
+		return from;
+	}
+
+	/* caller holds lock */
+	private void removeLocked(int key) {
+		IntBSTNode parent = null, curr = root;
+		while (curr != null && curr.getData() != key) {
+			parent = curr;
+			curr = key < curr.getData() ? curr.getLeft() : curr.getRight();
+		}
+		if (curr == null)
+			// Node does not exist in the tree
+			return;
+		size--;
+
+		if (curr.getLeft() != null && curr.getRight() != null) {
+			// Case 1: removeNode has two children
+			// Replace its data with the minimum data in the right subtree,
+			// then unlink the node holding that minimum data
+			IntBSTNode minParent = curr, min = curr.getRight();
+			while (min.getLeft() != null) {
+				minParent = min;
+				min = min.getLeft();
+			}
+			curr.setData(min.getData());
+			if (minParent == curr)
+				minParent.setRight(min.getRight());
+			else
+				minParent.setLeft(min.getRight());
+			return;
+		}
+
+		// Case 2: removeNode has one child
+		// Case 3: removeNode has none children
+		IntBSTNode child = (curr.getLeft() != null) ? curr.getLeft() : curr.getRight();
+		if (parent == null)
+			root = child;
+		else if (parent.getLeft() == curr)
+			parent.setLeft(child);
+		else
+			parent.setRight(child);
+	}
+
+	public boolean contains(int key) {
+		lock.lock();
+		try {
+			IntBSTNode curr = root;
+			while (curr != null) {
+				if (key == curr.getData())
+					return true;
+				curr = key < curr.getData() ? curr.getLeft() : curr.getRight();
+			}
+			return false;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public String toString() {
+		lock.lock();
+		try {
+			IntBSTNode node = this.root;
+			if (node == null)
+				return "[]";
+			else
+				return "[" + node.getData() + printString(node.getLeft())
+					+ printString(node.getRight()) + "]";
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private String printString (IntBSTNode node) {
+		if (node == null)
+			return "";
+		else
+			return "[" + node.getData() + printString(node.getLeft())
+				+ printString(node.getRight()) + "]";
+	}
+}
@@ -0,0 +1,216 @@
+package data_structures.implementation;
+import data_structures.IntSorted;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class IntFineGrainedList implements IntSorted {
+    private IntFineNode head;
+    private IntFineNode tail;
+    private final SizeCounter size = new SizeCounter();
+
+    public IntFineGrainedList() {
+        // the sentinels are recognized by reference, so every int is a valid key
+        head = new IntFineNode(Integer.MIN_VALUE);
+        tail = new IntFineNode(Integer.MAX_VALUE);
+        head.next = tail;
+    }
+
+    public void add(int key) {
+        IntFineNode pred = head;
+        head.lock();
+        try {
+            IntFineNode curr = pred.next;
+            curr.lock();
+            try  {
+                while(curr != tail && curr.key < key) {
+                    //  if current node is smaller than addNode, keep traversing 
+                    pred.unlock();
+                    pred = curr;
+                    curr = curr.next;
+                    curr.lock();
+                }
+
+                // when place found, create node and add it
+                IntFineNode newNode = new IntFineNode(key);
+                newNode.next = curr;
+                pred.next = newNode;
+                size.increment();
+            }
+            finally {
+                curr.unlock();
+            }
+        }
+        finally {
+            pred.unlock();
+        }
+    }
+
+    public void remove(int key) {
+        IntFineNode pred = head;
+        head.lock();
+        try {
+            IntFineNode curr = pred.next;
+            curr.lock();
+            try {
+                while(curr != tail && curr.key < key) {
+                    // if current node is smaller than addNode, keep traversing 
+                    pred.unlock();
+                    pred = curr;
+                    curr = curr.next;
+                    curr.lock();
+                }
+                if(curr != tail && curr.key == key) {
+                    // when removeNode found, remove it.
+                    pred.next = curr.next;
+                    size.decrement();
+                }
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    public void addAll(int[] keys) {
+        // sort the batch, then add it in one hand-over-hand sweep
+        int[] batch = keys.clone();
+        Arrays.sort(batch);
+        IntFineNode pred = head;
+        head.lock();
+        try {
+            IntFineNode curr = pred.next;
+            curr.lock();
+            try {
+                for (int key : batch) {
+                    while(curr != tail && curr.key < key) {
+                        pred.unlock();
+                        pred = curr;
+                        curr = curr.next;
+                        curr.lock();
+                    }
+                    // the new node becomes pred, so it is locked before it is reachable
+                    IntFineNode newNode = new IntFineNode(key);
+                    newNode.next = curr;
+                    newNode.lock();
+                    pred.next = newNode;
+                    size.increment();
+                    pred.unlock();
+                    pred = newNode;
+                }
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    public void removeAll(int[] keys) {
+        int[] batch = keys.clone();
+        Arrays.sort(batch);
+        IntFineNode pred = head;
+        head.lock();
+        try {
+            IntFineNode curr = pred.next;
+            curr.lock();
+            try {
+                for (int key : batch) {
+                    while(curr != tail && curr.key < key) {
+                        pred.unlock();
+                        pred = curr;
+                        curr = curr.next;
+                        curr.lock();
+                    }
+                    if(curr != tail && curr.key == key) {
+                        // unlink curr, then continue from its successor
+                        IntFineNode removed = curr;
+                        pred.next = curr.next;
+                        curr = curr.next;
+                        curr.lock();
+                        removed.unlock();
+                        size.decrement();
+                    }
+                }
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    public boolean contains(int key) {
+        IntFineNode pred = head;
+        head.lock();
+        try {
+            IntFineNode curr = pred.next;
+            curr.lock();
+            try {
+                while(curr != tail && curr.key < key) {
+                    // if current node is smaller than key, keep traversing
+                    pred.unlock();
+                    pred = curr;
+                    curr = curr.next;
+                    curr.lock();
+                }
+                return curr != tail && curr.key == key;
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+    
+    public int size() {
+        return size.get();
+    }
+
+    public String toString() {
+    	StringBuilder output = new StringBuilder();
+    	IntFineNode pred = head;
+        pred.lock();
+        try {
+            IntFineNode curr = pred.next;
+            curr.lock();
+            try {
+                while(curr != tail) {
+                    // traverse the list until reaching tail node.
+                	output.append(curr.key);
+                	pred.unlock();
+                    pred = curr;
+                    curr = curr.next;
+                    curr.lock();
+                    if (curr != tail) output.append(", ");
+                }
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+        return "["+output+"]";
+    }
+
+  /* IntFineNode class */
+    static class IntFineNode
+    {
+    	public int key;
+    	public IntFineNode next = null;
+    	public Lock lock = new ReentrantLock();
+
+    	public IntFineNode(int key) {
+    		this.key = key;
+    	}
+
+    	public void lock() {
+    		lock.lock();
+    	}
+
+    	public void unlock() {
+    		lock.unlock();
+    	}
+    }
+}
@@ -0,0 +1,225 @@
+package data_structures.implementation;
+
+import data_structures.IntSorted;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class IntFineGrainedTree implements IntSorted {
+   
+    // Dummy IntFineNode for locking purposes, its key is never read
+    // the actual root is root.left
+    private IntFineNode root = new IntFineNode(0);
+    private final SizeCounter size = new SizeCounter();
+
+	public void add(int key) {
+        IntFineNode curr, pred = root, next;
+        boolean left;
+
+        root.lock();
+        try {
+            // first check if root exists
+            if(root.left == null) {
+                // the tree is empty, create root node
+                root.left = new IntFineNode(key);
+                size.increment();
+            } else { 
+            	// traverse the tree until a free leaf is found.
+                curr = root.left;
+                curr.lock();
+                try {
+                    while(true) {
+                        // when addNode is smaller than or equal to current node
+                    	// it goes to the left
+                        left = curr.key >= key;
+                        next = left ? curr.left : curr.right;
+                        if(next == null) {
+                            // if leaf not available, item is new leaf.
+                            if(left)
+                                curr.left = new IntFineNode(key);
+                            else
+                                curr.right = new IntFineNode(key);
+                            size.increment();
+                            return;
+                        } else { 
+                            // Continue traversal in the subtree
+                            pred.unlock();
+                            pred = curr;
+                            curr = next;
+                        }
+                        curr.lock();
+                    }
+                } finally {
+                    curr.unlock();
+                }
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    public void remove(int key) {
+        IntFineNode curr, pred = root;
+        
+        root.lock();
+        try {
+            curr = root.left;
+
+            if(curr == null) {
+                return;
+            }
+
+            // traverse the tree to find the removeNode to remove
+            curr.lock();
+            try {
+                while(true) {
+                    if(curr.key == key) {
+                        // removeNode found, now remove (with 3 cases)
+                        if(curr.left != null && curr.right != null) {
+                            // Case 1: removeNode has two children
+                            curr.key = searchAndRemoveMinKey(curr);
+                        } else if(curr.left != null) {
+                            // Case 2: 
+                            // removeNode only has a left child
+                            replaceIntFineNode(curr, pred, curr.left);
+                        } else if(curr.right != null) {
+                            // remNode only has a right child
+                            replaceIntFineNode(curr, pred, curr.right);
+                        } else {
+                            // Case 3: removeNode without children, remove link from pred
+                            replaceIntFineNode(curr, pred, null);
+                        }
+                        size.decrement();
+                        return;
+                    } else { 
+                    	// removeNode not yet found, continue traversal.
+                        pred.unlock();
+                        pred = curr;
+                        curr = curr.key >= key ? curr.left : curr.right;
+
+                        if(curr == null)
+                            return;
+
+                        curr.lock();
+                    }
+                }
+            } finally {
+                if(curr != null)
+                    curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    public boolean contains(int key) {
+        IntFineNode curr, pred = root;
+
+        root.lock();
+        try {
+            curr = root.left;
+            if(curr == null) {
+                return false;
+            }
+
+            curr.lock();
+            try {
+                while(true) {
+                    if(curr.key == key) {
+                        return true;
+                    }
+                    // not yet found, continue traversal with lock coupling
+                    pred.unlock();
+                    pred = curr;
+                    curr = curr.key > key ? curr.left : curr.right;
+
+                    if(curr == null)
+                        return false;
+
+                    curr.lock();
+                }
+            } finally {
+                if(curr != null)
+                    curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+  
+    private int searchAndRemoveMinKey(IntFineNode parent) {
+        // parent is locked by the caller; keep both pred and curr locked
+        // so pred can be relinked safely
+        IntFineNode pred = parent, curr = parent.right, next;
+
+        curr.lock();
+        try {
+            while(curr.left != null) {
+            	// find the node with the smallest key in the right subtree
+                next = curr.left;
+                next.lock();
+                if(pred != parent)
+                    pred.unlock();
+                pred = curr;
+                curr = next;
+            }
+            replaceIntFineNode(curr, pred, curr.right);
+            return curr.key;
+        } finally {
+            curr.unlock();
+            if(pred != parent)
+                pred.unlock();
+        }
+    }
+
+ 
+    private void replaceIntFineNode(IntFineNode curr, IntFineNode parent, IntFineNode replaceNode) {
+        // replaceNode now replaces current node as child of parent.
+        if(parent == root || curr == parent.left) {
+            // left child of parent.
+            parent.left = replaceNode;
+        } else {
+            // right child of parent.
+            parent.right = replaceNode;
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public String toString() {
+        root.lock();
+        try {
+            return root.left == null ? "[]" : "["+root.left.printString()+"]";
+        } finally {
+            root.unlock();
+        }
+    }
+
+    
+    /* IntFineNode class */
+    static class IntFineNode {
+        int key;
+        IntFineNode left = null, right = null;
+        Lock lock = new ReentrantLock();
+
+        public IntFineNode(int key) {
+            this.key = key;
+        }
+
+        public void lock() {
+            lock.lock();
+        }
+
+        public void unlock() {
+            lock.unlock();
+        }
+
+        public String printString() {
+            String output = String.valueOf(key);
+	    if (left != null) output += ", " + left.printString();
+	    if (right != null) output += ", " + right.printString();
+            return output;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package data_structures.implementation;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+import data_structures.IntSorted;
+
+/*
+ * LockFreeList for int keys, with the same links: a node is marked for
+ * deletion by swinging its next field to a Marker in front of its
+ * successor, and the next fields are plain volatile fields CASed through
+ * a VarHandle, so searching and contains() allocate nothing.
+ */
+public class IntLockFreeList implements IntSorted {
+
+	private static final VarHandle NEXT;
+	static {
+		try {
+			NEXT = MethodHandles.lookup().findVarHandle(IntLockFreeNode.class, "next", IntLockFreeNode.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private IntLockFreeNode head;
+	private IntLockFreeNode tail;
+	private final SizeCounter size = new SizeCounter();
+
+	public IntLockFreeList() {
+		// the sentinels are recognized by reference, so every int is a valid key
+		tail = new IntLockFreeNode(Integer.MAX_VALUE, null);
+		head = new IntLockFreeNode(Integer.MIN_VALUE, tail);
+	}
+
+	public void add(int key) {
+		IntLockFreeNode node = new IntLockFreeNode(key, null);
+		while (true) {
+			IntLockFreeNode pred = find(head, key);
+			IntLockFreeNode curr = pred.next;
+			// pred was removed or got a new successor since find() looked, search again
+			if (curr instanceof Marker || precedes(curr, key))
+				continue;
+			// plain write, the CAS below publishes node
+			NEXT.set(node, curr);
+			if (NEXT.compareAndSet(pred, curr, node)) {
+				size.increment();
+				return;
+			}
+		}
+	}
+
+	public void remove(int key) {
+		while (true) {
+			IntLockFreeNode pred = find(head, key);
+			IntLockFreeNode curr = pred.next;
+			if (curr instanceof Marker || precedes(curr, key))
+				continue;
+			// key is not in the list
+			if (curr == tail || curr.key != key)
+				return;
+			IntLockFreeNode succ = curr.next;
+			// curr was removed by someone else, restart
+			if (succ instanceof Marker)
+				continue;
+			// a marker behind curr removes it, no node can be linked after curr anymore
+			if (!NEXT.compareAndSet(curr, succ, new Marker(succ)))
+				continue;
+			size.decrement();
+			// unlink curr and its marker; if it fails a later find() does it
+			NEXT.compareAndSet(pred, curr, succ);
+			return;
+		}
+	}
+
+	public void addAll(int[] keys) {
+		// sort the batch, then every search continues from where the previous one ended
+		int[] batch = keys.clone();
+		Arrays.sort(batch);
+		IntLockFreeNode start = head;
+		for (int key : batch) {
+			IntLockFreeNode node = new IntLockFreeNode(key, null);
+			while (true) {
+				IntLockFreeNode pred = find(start, key);
+				IntLockFreeNode curr = pred.next;
+				if (curr instanceof Marker || precedes(curr, key))
+					continue;
+				NEXT.set(node, curr);
+				if (NEXT.compareAndSet(pred, curr, node)) {
+					size.increment();
+					start = pred;
+					break;
+				}
+			}
+		}
+	}
+
+	public void removeAll(int[] keys) {
+		int[] batch = keys.clone();
+		Arrays.sort(batch);
+		IntLockFreeNode start = head;
+		for (int key : batch) {
+			while (true) {
+				IntLockFreeNode pred = find(start, key);
+				IntLockFreeNode curr = pred.next;
+				if (curr instanceof Marker || precedes(curr, key))
+					continue;
+				start = pred;
+				if (curr == tail || curr.key != key)
+					break;
+				IntLockFreeNode succ = curr.next;
+				if (succ instanceof Marker || !NEXT.compareAndSet(curr, succ, new Marker(succ)))
+					continue;
+				size.decrement();
+				NEXT.compareAndSet(pred, curr, succ);
+				break;
+			}
+		}
+	}
+
+	public boolean contains(int key) {
+		// wait-free: unlike find() this never snips removed nodes or restarts
+		IntLockFreeNode curr = head.next;
+		while (curr != tail) {
+			IntLockFreeNode succ = curr.next;
+			if (succ instanceof Marker) {
+				// curr is removed, skip it and its marker; a live duplicate may follow
+				curr = succ.next;
+			} else if (curr.key < key) {
+				curr = succ;
+			} else {
+				return curr.key == key;
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	public String toString() {
+		StringBuilder output = new StringBuilder();
+		IntLockFreeNode curr = head.next;
+		while (curr != tail) {
+			// traverse the list until reaching tail node.
+			IntLockFreeNode succ = curr.next;
+			if (succ instanceof Marker) {
+				curr = succ.next;
+				continue;
+			}
+			if (output.length() > 0) output.append(", ");
+			output.append(curr.key);
+			curr = succ;
+		}
+		return "["+output+"]";
+	}
+
+	/* node is a real node with a key below key; the tail sorts after every key */
+	private boolean precedes(IntLockFreeNode node, int key) {
+		return node != tail && node.key < key;
+	}
+
+	static class IntLockFreeNode
+	{
+		public int key;
+		public volatile IntLockFreeNode next;
+
+		public IntLockFreeNode(int key, IntLockFreeNode next) {
+			this.key = key;
+			this.next = next;
+		}
+	}
+
+	/* sits between a removed node and its successor; its key is never looked at */
+	static final class Marker extends IntLockFreeNode {
+		Marker(IntLockFreeNode next) {
+			super(0, next);
+		}
+	}
+
+	/*
+	 * Returns the last node before key that was in the list when it was
+	 * looked at, snipping removed nodes on the way. Searches from start,
+	 * which must precede key; a start node that has been removed meanwhile
+	 * cannot be linked after, so the search then falls back to the head.
+	 */
+	IntLockFreeNode find(IntLockFreeNode start, int key) {
+		IntLockFreeNode pred, curr, succ;
+		retry: while (true) {
+			pred = start.next instanceof Marker ? head : start;
+			curr = pred.next;
+			while (true) {
+				// pred has been removed under us
+				if (curr instanceof Marker)
+					continue retry;
+				// succeeding node
+				succ = curr.next;
+				if (succ instanceof Marker) {
+					// curr is removed, snip it together with its marker
+					if (!NEXT.compareAndSet(pred, curr, succ.next))
+						continue retry;
+					curr = succ.next;
+					continue;
+				}
+				if (curr == tail || curr.key >= key)
+					return pred;
+				pred = curr;
+				curr = succ;
+			}
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package data_structures.implementation;
+
+import data_structures.IntSorted;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/*
+ * LockFreeTree with int keys. Keys are stored as longs so the two sentinel
+ * leaves can use keys above every int: the tree then always has a parent and
+ * a grandparent for any real leaf, and needs no dummy-leaf special cases.
+ * Fields and update states are laid out as in LockFreeTree.
+ */
+public class IntLockFreeTree implements IntSorted {
+    // State array
+	final static int CLEAN = 1, MARK = 2, IFLAG = 3, DFLAG = 4;
+	final static long INF1 = (long) Integer.MAX_VALUE + 1, INF2 = INF1 + 1;
+
+    private static final VarHandle LEFT, RIGHT, UPDATE;
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            LEFT = lookup.findVarHandle(Internal.class, "left", Node.class);
+            RIGHT = lookup.findVarHandle(Internal.class, "right", Node.class);
+            UPDATE = lookup.findVarHandle(Internal.class, "update", Info.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final Internal root;
+    final SizeCounter size = new SizeCounter();
+
+    /*** Class ***/
+
+    /* Node */
+    abstract static class Node {
+        final long key;
+
+        Node(long key) {
+            this.key = key;
+        }
+    }
+
+    /* Internal Node */
+    static class Internal extends Node {
+        volatile Node left, right;
+        // null until the first operation flags this node, which reads as CLEAN
+        volatile Info update;
+
+        Internal(long k, Node l, Node r) {
+            super(k);
+            left = l;
+            right = r;
+        }
+
+        /* state of this node when its update field holds info */
+        int state(Info info) {
+            if(info instanceof DInfo && ((DInfo)info).p == this)
+                return MARK;
+            if(info == null || info.done)
+                return CLEAN;
+            return info instanceof IInfo ? IFLAG : DFLAG;
+        }
+
+        boolean casUpdate(Info expected, Info info) {
+            return UPDATE.compareAndSet(this, expected, info);
+        }
+    }
+
+    /* Leaf Node */
+    static class Leaf extends Node {
+        Leaf(long k) {
+            super(k);
+        }
+    }
+
+    /* Info */
+    abstract static class Info {
+        Leaf l;
+        // set when the flag this Info stands for is taken off again
+        volatile boolean done;
+    }
+
+    /* IInfo */
+    static class IInfo extends Info {
+        Internal p, newInternal;
+
+        IInfo(Internal p, Leaf l, Internal newInternal) {
+            this.p = p;
+            this.l = l;
+            this.newInternal = newInternal;
+        }
+    }
+
+    /* DInfo */
+    static class DInfo extends Info {
+        Internal gp, p;
+        Info pinfo;
+
+        DInfo(Internal gp, Internal p, Leaf l, Info pinfo) {
+            this.gp = gp;
+            this.p = p;
+            this.l = l;
+            this.pinfo = pinfo;
+        }
+    }
+
+    /* SearchResult: the update fields are read before the child pointers */
+    static class SearchResult {
+        Internal gp, p;
+        Leaf l;
+        Info pinfo, gpinfo;
+        int pstate, gpstate;
+    }
+
+
+    /*** Method ***/
+
+    public IntLockFreeTree() {
+        root = new Internal(INF2, new Leaf(INF1), new Leaf(INF2));
+    }
+
+    /* search */
+    private SearchResult search(long k) {
+        SearchResult r = new SearchResult();
+        Node l = root;
+
+        while(l instanceof Internal) {
+            r.gp = r.p;
+            r.gpinfo = r.pinfo;
+            r.gpstate = r.pstate;
+            r.p = (Internal)l;
+            r.pinfo = r.p.update;
+            r.pstate = r.p.state(r.pinfo);
+            l = k < r.p.key ? r.p.left : r.p.right;
+        }
+        r.l = (Leaf)l;
+        return r;
+    }
+
+    /* contains */
+    public boolean contains(int key) {
+        Node l = root;
+        while(l instanceof Internal) {
+            Internal p = (Internal)l;
+            l = key < p.key ? p.left : p.right;
+        }
+        return l.key == key;
+    }
+
+    /* add */
+    public void add(int key) {
+        Internal newInternal;
+        Leaf newSibling, newLeaf = new Leaf(key);
+        IInfo op;
+        SearchResult r;
+
+        while(true) {
+            r = search(key);
+            // Do not allow double key occurrences
+            if(r.l.key == key) {
+                return;
+            }
+
+            if(r.pstate != CLEAN) {
+                help(r.pinfo, r.pstate);
+            } else {
+                newSibling = new Leaf(r.l.key);
+                newInternal = key < r.l.key
+                    ? new Internal(r.l.key, newLeaf, newSibling)
+                    : new Internal(key, newSibling, newLeaf);
+                op = new IInfo(r.p, r.l, newInternal);
+                // iflag CAS step
+                if(r.p.casUpdate(r.pinfo, op)) {
+                    size.increment();
+                    helpInsert(op);		// the iflag CAS was succesful finish the insertion
+                    return;
+                }
+                help(r.p);
+            }
+        }
+    }
+
+    /* helpInsert */
+    private void helpInsert(IInfo op) {
+        // ichild CAS step
+        casChild(op.p, op.l, op.newInternal);
+
+        // iunflag step
+        op.done = true;
+    }
+
+    /* remove */
+    public void remove(int key) {
+        DInfo op;
+        SearchResult r;
+
+        while(true) {
+            r = search(key);
+
+            // Simply return if the key is not in the tree
+            if(r.l.key != key)
+                return;
+
+            // Parent and grandparent must be CLEAN in order to perform the
+            // remove operation, make sure they are
+            if(r.gpstate != CLEAN) {
+                help(r.gpinfo, r.gpstate);
+            } else if(r.pstate != CLEAN) {
+                help(r.pinfo, r.pstate);
+            } else {
+                op = new DInfo(r.gp, r.p, r.l, r.pinfo);
+                // dflag CAS step
+                if(r.gp.casUpdate(r.gpinfo, op)) {
+                    if(helpDelete(op)) {
+                        size.decrement();
+                        return;
+                    }
+                } else {
+                    // Failed to perform dflag CAS. First help other operation
+                    help(r.gp);
+                }
+            }
+        }
+    }
+
+    /* helpDelete */
+    private boolean helpDelete(DInfo op) {
+        // mark CAS step
+        if(op.p.casUpdate(op.pinfo, op)) {
+            helpMarked(op);
+            return true;
+        }
+
+        Info info = op.p.update;
+        if(info == op) {
+            // someone else marked the parent for this operation
+            helpMarked(op);
+            return true;
+        }
+
+        help(info, op.p.state(info));
+
+        // Failed to mark the parent. Remove DFLAG and restart.
+        // backtrack step
+        op.done = true;
+        return false;
+    }
+
+    /* helpMarked */
+    private void helpMarked(DInfo op) {
+        Node right = op.p.right,
+             other = right == op.l ? op.p.left : right;
+
+        // dchild CAS step
+        casChild(op.gp, op.p, other);
+
+        // dunflag step
+        op.done = true;
+    }
+
+    /* help */
+    private void help(Internal node) {
+        Info info = node.update;
+        help(info, node.state(info));
+    }
+
+    private void help(Info info, int state) {
+        switch(state) {
+            case IFLAG:
+                helpInsert((IInfo)info);
+                break;
+            case MARK:
+                helpMarked((DInfo)info);
+                break;
+            case DFLAG:
+                helpDelete((DInfo)info);
+                break;
+        }
+    }
+
+    /* casChild */
+    private void casChild(Internal parent, Node oldNode, Node newNode) {
+        if(newNode.key < parent.key) {
+            LEFT.compareAndSet(parent, oldNode, newNode);
+        } else {
+            RIGHT.compareAndSet(parent, oldNode, newNode);
+        }
+    }
+
+
+    /* size */
+    public int size() {
+        return size.get();
+    }
+
+    public String toString() {
+        StringBuilder output = new StringBuilder();
+        toString(root, output);
+        return "[" + output + "]";
+    }
+
+    private void toString(Node node, StringBuilder output) {
+        if(node instanceof Internal) {
+            toString(((Internal)node).left, output);
+            toString(((Internal)node).right, output);
+        } else if(node.key <= Integer.MAX_VALUE) {
+            // sentinel leaves are left out
+            if(output.length() > 0)
+                output.append(", ");
+            output.append(node.key);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package data_structures.implementation;
+
+
+public class IntNode 
+{
+	public int key;
+	public IntNode next = null;
+
+	public IntNode(int key) {
+		this.key = key;
+		this.next = null;
+	}
+}
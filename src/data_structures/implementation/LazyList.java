@@ -0,0 +1,156 @@
+package data_structures.implementation;
+import data_structures.Sorted;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Lazy list: traversals take no locks, add and remove lock only pred and
+ * curr and then validate that both are unmarked and still adjacent. A node
+ * is marked before it is unlinked, so contains() needs no locks at all.
+ * Like LockFreeTree it is a set, adding a present key is a no-op.
+ */
+public class LazyList<T extends Comparable<T>> implements Sorted<T> {
+    private LazyNode head;
+    private final SizeCounter size = new SizeCounter();
+
+    public LazyList() {
+        head = new HeadNode();
+        head.next = new TailNode();
+    }
+
+    public void add(T t) {
+        while(true) {
+            LazyNode pred = head;
+            LazyNode curr = pred.next;
+            while(curr.compareTo(t) < 0) {
+                pred = curr;
+                curr = curr.next;
+            }
+
+            pred.lock();
+            try {
+                curr.lock();
+                try {
+                    if(validate(pred, curr)) {
+                        if(curr.compareTo(t) == 0)
+                            return; // already present
+                        LazyNode newNode = new LazyNode(t);
+                        newNode.next = curr;
+                        pred.next = newNode;
+                        size.increment();
+                        return;
+                    }
+                } finally {
+                    curr.unlock();
+                }
+            } finally {
+                pred.unlock();
+            }
+            // pred or curr changed while we were not holding their locks, retry
+        }
+    }
+
+    public void remove(T t) {
+        while(true) {
+            LazyNode pred = head;
+            LazyNode curr = pred.next;
+            while(curr.compareTo(t) < 0) {
+                pred = curr;
+                curr = curr.next;
+            }
+
+            pred.lock();
+            try {
+                curr.lock();
+                try {
+                    if(validate(pred, curr)) {
+                        if(curr.compareTo(t) != 0)
+                            return; // not present
+                        // logical removal first, so lock-free readers see it
+                        curr.marked = true;
+                        pred.next = curr.next;
+                        size.decrement();
+                        return;
+                    }
+                } finally {
+                    curr.unlock();
+                }
+            } finally {
+                pred.unlock();
+            }
+        }
+    }
+
+    public boolean contains(T t) {
+        LazyNode curr = head.next;
+        while(curr.compareTo(t) < 0)
+            curr = curr.next;
+        return curr.compareTo(t) == 0 && !curr.marked;
+    }
+
+    private boolean validate(LazyNode pred, LazyNode curr) {
+        return !pred.marked && !curr.marked && pred.next == curr;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public String toString() {
+        String output = "";
+        LazyNode curr = head.next;
+        while(curr.next != null) {
+            // traverse the list until reaching tail node.
+            if(!curr.marked) {
+                if(output.length() > 0) output += ", ";
+                output += curr.data;
+            }
+            curr = curr.next;
+        }
+        return "["+output+"]";
+    }
+
+    /* LazyNode class */
+    class LazyNode {
+        T data;
+        volatile LazyNode next = null;
+        volatile boolean marked = false;
+        Lock lock = new ReentrantLock();
+
+        LazyNode(T data) {
+            this.data = data;
+        }
+
+        void lock() {
+            lock.lock();
+        }
+
+        void unlock() {
+            lock.unlock();
+        }
+
+        int compareTo(T t) {
+            return data.compareTo(t);
+        }
+    }
+
+    class HeadNode extends LazyNode {
+        HeadNode() {
+            super(null);
+        }
+
+        int compareTo(T t) {
+            return -1;
+        }
+    }
+
+    class TailNode extends LazyNode {
+        TailNode() {
+            super(null);
+        }
+
+        int compareTo(T t) {
+            return 1;
+        }
+    }
+}
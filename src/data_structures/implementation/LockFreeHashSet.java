@@ -0,0 +1,155 @@
+package data_structures.implementation;
+
+import data_structures.Sorted;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Split-ordered hash set of Shalev and Shavit. All items live in one
+ * LockFreeList, sorted by their hash with its bits reversed; bucket b
+ * points at a sentinel node in that list, so an operation only walks the
+ * items of its own bucket. Doubling the number of buckets moves no item:
+ * the new bucket b + 2^k splits the list of bucket b, and gets its
+ * sentinel when it is first used, after its parent's.
+ *
+ * The bucket table is a directory of segments of growing size, segment s
+ * holding 2^(s-1) buckets, so growing it allocates a segment and never
+ * copies. A set: add ignores an item that is present already.
+ */
+public class LockFreeHashSet<T extends Comparable<T>> implements Sorted<T>, Contended {
+	private static final int MAX_BUCKETS = 1 << 30;
+	// average number of items per bucket before the table doubles
+	private static final int LOAD_FACTOR = 2;
+	// one in this many adds sums the size to see whether the table should double
+	private static final int RESIZE_CHECK = 64;
+
+	private final LockFreeList<SplitKey<T>> list = new LockFreeList<SplitKey<T>>();
+	private final AtomicReferenceArray<AtomicReferenceArray<LockFreeList<SplitKey<T>>.LockFreeNode<SplitKey<T>>>> segments =
+			new AtomicReferenceArray<AtomicReferenceArray<LockFreeList<SplitKey<T>>.LockFreeNode<SplitKey<T>>>>(32);
+	private final AtomicInteger nrBuckets = new AtomicInteger(2);
+	private final SizeCounter size = new SizeCounter();
+
+	public LockFreeHashSet() {
+		// bucket 0 starts at the head of the list
+		bucketSlot(0).set(0, list.head());
+	}
+
+	public void add(T t) {
+		int hash = hash(t);
+		SplitKey<T> key = new SplitKey<T>(Integer.reverse(hash | 0x80000000), t);
+		// a fresh key is only in the list when it was added by this call
+		if (list.addIfAbsent(bucket(hash), key).data != key)
+			return;
+		size.increment();
+		// summing the size reads every cell of the counter, too much for each add
+		if (ThreadLocalRandom.current().nextInt(RESIZE_CHECK) != 0)
+			return;
+		int buckets = nrBuckets.get();
+		if (size.get() > LOAD_FACTOR * buckets && buckets < MAX_BUCKETS)
+			nrBuckets.compareAndSet(buckets, 2 * buckets);
+	}
+
+	public void remove(T t) {
+		int hash = hash(t);
+		if (list.remove(bucket(hash), new SplitKey<T>(Integer.reverse(hash | 0x80000000), t)))
+			size.decrement();
+	}
+
+	public boolean contains(T t) {
+		int hash = hash(t);
+		return list.contains(bucket(hash), new SplitKey<T>(Integer.reverse(hash | 0x80000000), t));
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	public ContentionStats contentionStats() {
+		return list.contentionStats();
+	}
+
+	/* The items in ascending order; the list itself is in split order */
+	public String toString() {
+		List<T> items = new ArrayList<T>();
+		for (SplitKey<T> key : list.toList()) {
+			if (key.item != null)
+				items.add(key.item);
+		}
+		Collections.sort(items);
+		return items.toString();
+	}
+
+	// spread the high bits over the low ones, which pick the bucket; the top bit is left for the split order
+	private static int hash(Object t) {
+		int h = t.hashCode();
+		return (h ^ (h >>> 16)) & 0x7fffffff;
+	}
+
+	private LockFreeList<SplitKey<T>>.LockFreeNode<SplitKey<T>> bucket(int hash) {
+		int b = hash & (nrBuckets.get() - 1);
+		LockFreeList<SplitKey<T>>.LockFreeNode<SplitKey<T>> sentinel = bucketSlot(b).get(offset(b));
+		return sentinel != null ? sentinel : initializeBucket(b);
+	}
+
+	/* Links the sentinel of bucket b into the list, after that of its parent, the bucket it splits */
+	private LockFreeList<SplitKey<T>>.LockFreeNode<SplitKey<T>> initializeBucket(int b) {
+		int parent = b & ~Integer.highestOneBit(b);
+		LockFreeList<SplitKey<T>>.LockFreeNode<SplitKey<T>> start = bucketSlot(parent).get(offset(parent));
+		if (start == null)
+			start = initializeBucket(parent);
+		// threads racing here all get the one sentinel that made it into the list
+		LockFreeList<SplitKey<T>>.LockFreeNode<SplitKey<T>> sentinel = list.addIfAbsent(start, new SplitKey<T>(Integer.reverse(b), null));
+		bucketSlot(b).set(offset(b), sentinel);
+		return sentinel;
+	}
+
+	// segment 0 holds bucket 0, segment s > 0 holds buckets 2^(s-1) .. 2^s - 1
+	private AtomicReferenceArray<LockFreeList<SplitKey<T>>.LockFreeNode<SplitKey<T>>> bucketSlot(int b) {
+		int s = 32 - Integer.numberOfLeadingZeros(b);
+		AtomicReferenceArray<LockFreeList<SplitKey<T>>.LockFreeNode<SplitKey<T>>> segment = segments.get(s);
+		if (segment == null) {
+			segments.compareAndSet(s, null, new AtomicReferenceArray<LockFreeList<SplitKey<T>>.LockFreeNode<SplitKey<T>>>(s == 0 ? 1 : 1 << (s - 1)));
+			segment = segments.get(s);
+		}
+		return segment;
+	}
+
+	private static int offset(int b) {
+		return b == 0 ? 0 : b - Integer.highestOneBit(b);
+	}
+
+	/*
+	 * An item, or the sentinel of a bucket when item is null, ordered by its
+	 * reversed hash. Item keys have their lowest bit set, sentinel keys not,
+	 * so a sentinel comes before all items of its bucket. Items with equal
+	 * hashes are ordered by the items themselves.
+	 */
+	static final class SplitKey<T extends Comparable<T>> implements Comparable<SplitKey<T>> {
+		final int splitOrder;
+		final T item;
+
+		SplitKey(int splitOrder, T item) {
+			this.splitOrder = splitOrder;
+			this.item = item;
+		}
+
+		public int compareTo(SplitKey<T> other) {
+			int c = Integer.compareUnsigned(splitOrder, other.splitOrder);
+			if (c != 0 || item == other.item)
+				return c;
+			if (item == null)
+				return -1;
+			if (other.item == null)
+				return 1;
+			return item.compareTo(other.item);
+		}
+
+		public String toString() {
+			return String.valueOf(item);
+		}
+	}
+}
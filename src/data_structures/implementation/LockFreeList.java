@@ -1,123 +1,423 @@
 package data_structures.implementation;
 
-import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import data_structures.Sorted;
-import data_structures.implementation.FineGrainedList.FineNode;
 
-public class LockFreeList<T extends Comparable<T>> implements Sorted<T> {
+/*
+ * Harris-Michael list where a node is marked for deletion by swinging its
+ * next field to a Marker node in front of its successor, as in
+ * ConcurrentSkipListMap. The next fields are plain volatile fields CASed
+ * through a VarHandle, so add only allocates the new node and remove only
+ * its marker; searching and contains() allocate nothing.
+ *
+ * snapshot() is the iterator of Petrank and Timnat: while it walks the
+ * list, a SnapCollector is installed that every operation reports the
+ * nodes it adds, removes or relies on into, so nodes the walk missed or
+ * saw too early are still accounted for. Without a snapshot going on,
+ * an operation only reads the collector field.
+ */
+public class LockFreeList<T extends Comparable<T>> implements Sorted<T>, Iterable<T>, Contended {
+
+	private static final VarHandle NEXT, COLLECTOR;
+	static {
+		try {
+			NEXT = MethodHandles.lookup().findVarHandle(LockFreeList.LockFreeNode.class, "next", LockFreeList.LockFreeNode.class);
+			COLLECTOR = MethodHandles.lookup().findVarHandle(LockFreeList.class, "collector", LockFreeList.SnapCollector.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
 
 	private LockFreeNode<T> head;
 	private LockFreeNode<T> tail;
-	
+	private final SizeCounter size = new SizeCounter();
+	private final ContentionStats stats = new ContentionStats();
+	// the collector of the snapshot going on, if any
+	private volatile SnapCollector collector;
+
 	public LockFreeList() {
 		head = new HeadNode();
 		tail = new TailNode();
-		head.next = new AtomicMarkableReference<LockFreeList<T>.LockFreeNode<T>>(tail, false);
+		head.next = tail;
 	}
-	
+
 	public void add(T t) {
+		LockFreeNode<T> node = new LockFreeNode<T>(t);
 		while (true) {
-			Window window = find(head, t);
-			LockFreeNode<T> pred = window.pred, curr = window.curr;
-			LockFreeNode<T> node = new LockFreeNode<T>(t);
-			node.next = new AtomicMarkableReference<LockFreeNode<T>>(curr, false);
-			if (pred.next.compareAndSet(curr,  node, false, false)) {
-				return;// true;
+			LockFreeNode<T> pred = find(head, t);
+			LockFreeNode<T> curr = pred.next;
+			// pred was removed or got a new successor since find() looked, search again
+			if (curr instanceof Marker || curr.compareTo(t) < 0)
+				continue;
+			// plain write, the CAS below publishes node
+			NEXT.set(node, curr);
+			if (casNext(pred, curr, node)) {
+				size.increment();
+				report(node, false);
+				return;
 			}
 		}
 	}
 
 	public void remove(T t) {
-		boolean snip;
+		remove(head, t);
+	}
+
+	/* Removes one t after start, which must precede t; false if there was none */
+	boolean remove(LockFreeNode<T> start, T t) {
+		while (true) {
+			LockFreeNode<T> pred = find(start, t);
+			LockFreeNode<T> curr = pred.next;
+			if (curr instanceof Marker || curr.compareTo(t) < 0)
+				continue;
+			// t is not in the list (curr may even be the tail)
+			if (curr.compareTo(t) != 0)
+				return false;
+			LockFreeNode<T> succ = curr.next;
+			// curr was removed by someone else, restart
+			if (succ instanceof Marker)
+				continue;
+			// a marker behind curr removes it, no node can be linked after curr anymore
+			if (!casNext(curr, succ, new Marker(succ)))
+				continue;
+			size.decrement();
+			report(curr, true);
+			// unlink curr and its marker; if it fails a later find() does it
+			casNext(pred, curr, succ);
+			return true;
+		}
+	}
+
+	/*
+	 * Adds t after start unless the list holds an equal item already, and
+	 * returns the node holding t: the new one, or the one that was there.
+	 */
+	LockFreeNode<T> addIfAbsent(LockFreeNode<T> start, T t) {
+		LockFreeNode<T> node = null;
 		while (true) {
-			Window window = find(head, t);
-			LockFreeNode<T> pred = window.pred, curr = window.curr;
-			LockFreeNode<T> succ = curr.next.getReference();
-			// try to mark curr's next ref
-			snip =  curr.next.compareAndSet(succ,  succ,  false,  true);
-			if (!snip)
-				continue; // if failed to mark restart
-			// else set pred's next ref to succ so curr is unrefed, set mark to false
-			pred.next.compareAndSet(curr, succ,  false, false);
-			// if it fails we don't care since we could mark someone already helped
-			return;
-		}
-	}
-	
+			LockFreeNode<T> pred = find(start, t);
+			LockFreeNode<T> curr = pred.next;
+			if (curr instanceof Marker || curr.compareTo(t) < 0)
+				continue;
+			if (curr.compareTo(t) == 0) {
+				report(curr, false);
+				return curr;
+			}
+			if (node == null)
+				node = new LockFreeNode<T>(t);
+			NEXT.set(node, curr);
+			if (casNext(pred, curr, node)) {
+				size.increment();
+				report(node, false);
+				return node;
+			}
+		}
+	}
+
+	public boolean contains(T t) {
+		return contains(head, t);
+	}
+
+	/* Looks for t after start, which must precede t and must not be removed */
+	boolean contains(LockFreeNode<T> start, T t) {
+		// wait-free: unlike find() this never snips removed nodes or restarts
+		LockFreeNode<T> curr = start.next;
+		while (true) {
+			LockFreeNode<T> succ = curr.next;
+			if (succ instanceof Marker) {
+				// curr is removed, skip it and its marker
+				report(curr, true);
+				curr = succ.next;
+			} else if (curr.compareTo(t) < 0) {
+				curr = succ;
+			} else if (curr.compareTo(t) == 0) {
+				report(curr, false);
+				return true;
+			} else {
+				return false;
+			}
+		}
+	}
+
+	public void addAll(Collection<T> ts) {
+		// sort the batch, then every search continues from where the previous one ended
+		List<T> batch = new ArrayList<T>(ts);
+		Collections.sort(batch);
+		LockFreeNode<T> start = head;
+		for (T t : batch) {
+			LockFreeNode<T> node = new LockFreeNode<T>(t);
+			while (true) {
+				LockFreeNode<T> pred = find(start, t);
+				LockFreeNode<T> curr = pred.next;
+				if (curr instanceof Marker || curr.compareTo(t) < 0)
+					continue;
+				NEXT.set(node, curr);
+				if (casNext(pred, curr, node)) {
+					size.increment();
+					report(node, false);
+					start = pred;
+					break;
+				}
+			}
+		}
+	}
+
+	public void removeAll(Collection<T> ts) {
+		List<T> batch = new ArrayList<T>(ts);
+		Collections.sort(batch);
+		LockFreeNode<T> start = head;
+		for (T t : batch) {
+			while (true) {
+				LockFreeNode<T> pred = find(start, t);
+				LockFreeNode<T> curr = pred.next;
+				if (curr instanceof Marker || curr.compareTo(t) < 0)
+					continue;
+				start = pred;
+				if (curr.compareTo(t) != 0)
+					break;
+				LockFreeNode<T> succ = curr.next;
+				if (succ instanceof Marker || !casNext(curr, succ, new Marker(succ)))
+					continue;
+				size.decrement();
+				report(curr, true);
+				casNext(pred, curr, succ);
+				break;
+			}
+		}
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	public ContentionStats contentionStats() {
+		return stats;
+	}
+
+	LockFreeNode<T> head() {
+		return head;
+	}
+
 	public String toString() {
-		String output = "";
-		boolean[] marked = {false};
-    	LockFreeNode<T> pred = head;
-        LockFreeNode<T> curr = pred.next.get(marked);
-        while(curr.next.get(marked) != null) {
-            // traverse the list until reaching tail node.
-        	output += curr.data;
-            pred = curr;
-            curr = curr.next.get(marked);
-            if (curr.next.get(marked) != null) output += ", ";
-        }
-        return "["+output+"]";
+		StringBuilder output = new StringBuilder();
+		for (T t : toList()) {
+			if (output.length() > 0) output.append(", ");
+			output.append(t);
+		}
+		return "["+output+"]";
 	}
-	
-	class LockFreeNode<T extends Comparable<T>> 
+
+	/*
+	 * The items as they were at one moment, while others may go on
+	 * updating; the moment is when the collector is deactivated. The walk
+	 * adds every node it finds in the list, the operations meanwhile
+	 * report the nodes they add and remove, and the result is the walked
+	 * and added nodes without the removed ones. Snapshots that overlap
+	 * share a collector, and the first to finish ends it for all.
+	 */
+	public List<T> snapshot() {
+		SnapCollector c = activeCollector();
+		LockFreeNode<T> curr = head.next;
+		while (curr != tail) {
+			LockFreeNode<T> succ = curr.next;
+			if (succ instanceof Marker) {
+				curr = succ.next;
+				continue;
+			}
+			// another snapshot on this collector has finished already
+			if (!c.nodes.push(curr, false))
+				break;
+			curr = succ;
+		}
+		c.active = false;
+		COLLECTOR.compareAndSet(this, c, null);
+
+		// nodes can come in more than once, so they are told apart by identity
+		Set<LockFreeNode<T>> removed = Collections.newSetFromMap(new IdentityHashMap<LockFreeNode<T>, Boolean>());
+		Set<LockFreeNode<T>> present = Collections.newSetFromMap(new IdentityHashMap<LockFreeNode<T>, Boolean>());
+		for (Cell cell = c.reports.seal(); cell != null; cell = cell.next)
+			(cell.removed ? removed : present).add(cell.node);
+		for (Cell cell = c.nodes.seal(); cell != null; cell = cell.next)
+			present.add(cell.node);
+		List<T> items = new ArrayList<T>(present.size());
+		for (LockFreeNode<T> node : present) {
+			if (!removed.contains(node))
+				items.add(node.data);
+		}
+		Collections.sort(items);
+		return items;
+	}
+
+	private SnapCollector activeCollector() {
+		while (true) {
+			SnapCollector c = collector;
+			if (c != null && c.active)
+				return c;
+			SnapCollector fresh = new SnapCollector();
+			if (COLLECTOR.compareAndSet(this, c, fresh))
+				return fresh;
+		}
+	}
+
+	/* Tells the snapshot going on, if any, that node was added (or is relied on being there) or removed */
+	private void report(LockFreeNode<T> node, boolean removed) {
+		SnapCollector c = collector;
+		if (c != null && c.active)
+			c.reports.push(node, removed);
+	}
+
+	/* iterator over a snapshot, see snapshot() */
+	public Iterator<T> iterator() {
+		return Collections.unmodifiableList(snapshot()).iterator();
+	}
+
+	/* The items in list order, skipping removed nodes; not a snapshot while others update the list */
+	List<T> toList() {
+		List<T> items = new ArrayList<T>();
+		LockFreeNode<T> curr = head.next;
+		while (curr != tail) {
+			// traverse the list until reaching tail node.
+			LockFreeNode<T> succ = curr.next;
+			if (succ instanceof Marker) {
+				curr = succ.next;
+				continue;
+			}
+			items.add(curr.data);
+			curr = succ;
+		}
+		return items;
+	}
+
+	private boolean casNext(LockFreeNode<T> node, LockFreeNode<T> expected, LockFreeNode<T> next) {
+		if (NEXT.compareAndSet(node, expected, next))
+			return true;
+		stats.casFailed();
+		return false;
+	}
+
+	class LockFreeNode<T extends Comparable<T>>
     {
     	public T data;
-    	public AtomicMarkableReference<LockFreeNode<T>> next;
+    	public volatile LockFreeNode<T> next;
 
     	public LockFreeNode(T data) {
     		this.data = data;
-    		this.next = new AtomicMarkableReference<LockFreeNode<T>>(null, false);
     	}
-    	
+
     	public LockFreeNode() {
     		this.data = null;
-    		this.next = new AtomicMarkableReference<LockFreeNode<T>>(null, false);
     	}
-    	
-    	int compareTo(T t) {	
+
+    	int compareTo(T t) {
     		return this.data.compareTo(t);
     	}
     }
-	
+
 	class HeadNode extends LockFreeNode<T> {
         int compareTo(T t) {
             return -1;
         }
     }
-	
+
 	class TailNode extends LockFreeNode<T> {
         int compareTo(T t) {
             return 1;
         }
     }
-	
-	class Window {
-		public LockFreeNode<T> pred, curr;
-		Window(LockFreeNode<T> myPred, LockFreeNode<T> myCurr) {
-			pred = myPred; 
-			curr = myCurr;
-		}
-	}
-	
-	public Window find(LockFreeNode<T> head, T item) {
-		LockFreeNode<T> pred = null, curr = null, succ = null;
-		boolean[] marked = {false};
-		boolean snip;
+
+	/* what one snapshot gathers; see snapshot() */
+	final class SnapCollector {
+		volatile boolean active = true;
+		final Cells nodes = new Cells();
+		final Cells reports = new Cells();
+	}
+
+	/* Treiber stack of reported nodes; once sealed, by a cell without a node on top, pushing fails */
+	final class Cells {
+		private final AtomicReference<Cell> top = new AtomicReference<Cell>();
+
+		boolean push(LockFreeNode<T> node, boolean removed) {
+			while (true) {
+				Cell t = top.get();
+				if (t != null && t.node == null)
+					return false;
+				if (top.compareAndSet(t, new Cell(node, removed, t)))
+					return true;
+			}
+		}
+
+		/* Stops further pushes and returns what was pushed before */
+		Cell seal() {
+			while (true) {
+				Cell t = top.get();
+				if (t != null && t.node == null)
+					return t.next;
+				if (top.compareAndSet(t, new Cell(null, false, t)))
+					return t;
+			}
+		}
+	}
+
+	final class Cell {
+		final LockFreeNode<T> node;
+		final boolean removed;
+		final Cell next;
+
+		Cell(LockFreeNode<T> node, boolean removed, Cell next) {
+			this.node = node;
+			this.removed = removed;
+			this.next = next;
+		}
+	}
+
+	/* sits between a removed node and its successor; never compared, searches step over it */
+	class Marker extends LockFreeNode<T> {
+		Marker(LockFreeNode<T> next) {
+			this.next = next;
+		}
+	}
+
+	/*
+	 * Returns the last node before item that was in the list when it was
+	 * looked at, snipping removed nodes on the way. Searches from start,
+	 * which must precede item; a start node that has been removed meanwhile
+	 * cannot be linked after, so the search then falls back to the head.
+	 */
+	LockFreeNode<T> find(LockFreeNode<T> start, T item) {
+		LockFreeNode<T> pred, curr, succ;
 		retry: while (true) {
-			pred = head;
-			curr = pred.next.getReference();
+			pred = start.next instanceof Marker ? head : start;
+			curr = pred.next;
 			while (true) {
+				// pred has been removed under us
+				if (curr instanceof Marker) {
+					stats.retried();
+					continue retry;
+				}
 				// succeeding node
-				succ = curr.next.get(marked);
-				while (marked[0]) {
-					snip = pred.next.compareAndSet(curr, succ, false, false);
-					if (!snip) continue retry;
-					curr = succ;
-					succ = curr.next.get(marked);
+				succ = curr.next;
+				if (succ instanceof Marker) {
+					// curr is removed, snip it together with its marker
+					report(curr, true);
+					if (!casNext(pred, curr, succ.next)) {
+						stats.retried();
+						continue retry;
+					}
+					curr = succ.next;
+					continue;
 				}
 				if (curr.compareTo(item) >= 0)
-					return new Window(pred, curr);
+					return pred;
 				pred = curr;
 				curr = succ;
 			}
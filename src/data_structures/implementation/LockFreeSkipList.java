@@ -0,0 +1,217 @@
+package data_structures.implementation;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+
+import data_structures.Sorted;
+
+/*
+ * Lock-free skip list: every level is a LockFreeList-style list with
+ * logical deletion through the mark bit of the next reference. Level 0
+ * holds all elements and decides membership; the upper levels are only
+ * shortcuts. Like LockFreeTree it is a set, adding a present key is a no-op.
+ */
+public class LockFreeSkipList<T extends Comparable<T>> implements Sorted<T> {
+
+	// enough levels for about 2^25 elements
+	static final int MAX_LEVEL = 24;
+
+	private LockFreeNode<T> head;
+	private LockFreeNode<T> tail;
+	private final SizeCounter size = new SizeCounter();
+
+	public LockFreeSkipList() {
+		head = new HeadNode();
+		tail = new TailNode();
+		for (int level = 0; level <= MAX_LEVEL; level++) {
+			head.next[level] = new AtomicMarkableReference<LockFreeNode<T>>(tail, false);
+		}
+	}
+
+	public void add(T t) {
+		int topLevel = randomLevel();
+		LockFreeNode<T>[] preds = newNodeArray(), succs = newNodeArray();
+		boolean[] marked = {false};
+		while (true) {
+			if (find(t, preds, succs))
+				return; // already present
+			LockFreeNode<T> node = new LockFreeNode<T>(t, topLevel);
+			for (int level = 0; level <= topLevel; level++) {
+				node.next[level] = new AtomicMarkableReference<LockFreeNode<T>>(succs[level], false);
+			}
+			// linking at the bottom level adds t to the set
+			if (!preds[0].next[0].compareAndSet(succs[0], node, false, false))
+				continue;
+			size.increment();
+			// the other levels are linked one by one, refreshing preds and succs when a CAS fails
+			for (int level = 1; level <= topLevel; level++) {
+				while (true) {
+					LockFreeNode<T> succ = node.next[level].get(marked);
+					if (marked[0])
+						return; // removed concurrently, stop linking it
+					if (succ != succs[level] && !node.next[level].compareAndSet(succ, succs[level], false, false))
+						continue;
+					if (preds[level].next[level].compareAndSet(succs[level], node, false, false))
+						break;
+					find(t, preds, succs);
+				}
+			}
+			return;
+		}
+	}
+
+	public void remove(T t) {
+		LockFreeNode<T>[] preds = newNodeArray(), succs = newNodeArray();
+		boolean[] marked = {false};
+		if (!find(t, preds, succs))
+			return;
+		LockFreeNode<T> node = succs[0];
+		// mark the upper levels top-down, these do not decide membership
+		for (int level = node.topLevel; level >= 1; level--) {
+			LockFreeNode<T> succ = node.next[level].get(marked);
+			while (!marked[0]) {
+				node.next[level].compareAndSet(succ, succ, false, true);
+				succ = node.next[level].get(marked);
+			}
+		}
+		// marking the bottom level removes t from the set
+		LockFreeNode<T> succ = node.next[0].get(marked);
+		while (!marked[0]) {
+			if (node.next[0].compareAndSet(succ, succ, false, true)) {
+				size.decrement();
+				find(t, preds, succs); // snip the node on every level
+				return;
+			}
+			succ = node.next[0].get(marked);
+		}
+		// another thread removed it first
+	}
+
+	public boolean contains(T t) {
+		// wait-free: skips marked nodes without snipping them
+		boolean[] marked = {false};
+		LockFreeNode<T> pred = head, curr = null, succ;
+		for (int level = MAX_LEVEL; level >= 0; level--) {
+			curr = pred.next[level].getReference();
+			while (true) {
+				succ = curr.next[level].get(marked);
+				while (marked[0]) {
+					curr = succ;
+					succ = curr.next[level].get(marked);
+				}
+				if (curr.compareTo(t) < 0) {
+					pred = curr;
+					curr = succ;
+				} else {
+					break;
+				}
+			}
+		}
+		return curr.compareTo(t) == 0;
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	public String toString() {
+		String output = "";
+		boolean[] marked = {false};
+		LockFreeNode<T> curr = head.next[0].getReference();
+		while (curr != tail) {
+			// traverse the bottom level until reaching tail node.
+			LockFreeNode<T> succ = curr.next[0].get(marked);
+			if (!marked[0]) {
+				if (output.length() > 0) output += ", ";
+				output += curr.data;
+			}
+			curr = succ;
+		}
+		return "["+output+"]";
+	}
+
+	/*
+	 * Fills preds and succs with the nodes around t on every level, snipping
+	 * marked nodes on the way, and returns whether t is at the bottom level.
+	 */
+	private boolean find(T t, LockFreeNode<T>[] preds, LockFreeNode<T>[] succs) {
+		boolean[] marked = {false};
+		boolean snip;
+		LockFreeNode<T> pred, curr, succ;
+		retry: while (true) {
+			pred = head;
+			for (int level = MAX_LEVEL; level >= 0; level--) {
+				curr = pred.next[level].getReference();
+				while (true) {
+					succ = curr.next[level].get(marked);
+					while (marked[0]) {
+						snip = pred.next[level].compareAndSet(curr, succ, false, false);
+						if (!snip) continue retry;
+						curr = succ;
+						succ = curr.next[level].get(marked);
+					}
+					if (curr.compareTo(t) < 0) {
+						pred = curr;
+						curr = succ;
+					} else {
+						break;
+					}
+				}
+				preds[level] = pred;
+				succs[level] = curr;
+			}
+			return succs[0].compareTo(t) == 0;
+		}
+	}
+
+	private static int randomLevel() {
+		// geometric distribution: level i with probability 2^-(i+1)
+		return Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | (1 << MAX_LEVEL));
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private LockFreeNode<T>[] newNodeArray() {
+		return (LockFreeNode<T>[]) new LockFreeNode[MAX_LEVEL + 1];
+	}
+
+	class LockFreeNode<T extends Comparable<T>>
+	{
+		public T data;
+		public AtomicMarkableReference<LockFreeNode<T>>[] next;
+		public int topLevel;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public LockFreeNode(T data, int topLevel) {
+			this.data = data;
+			this.topLevel = topLevel;
+			this.next = (AtomicMarkableReference<LockFreeNode<T>>[]) new AtomicMarkableReference[topLevel + 1];
+		}
+
+		int compareTo(T t) {
+			return this.data.compareTo(t);
+		}
+	}
+
+	class HeadNode extends LockFreeNode<T> {
+		HeadNode() {
+			super(null, MAX_LEVEL);
+		}
+
+		int compareTo(T t) {
+			return -1;
+		}
+	}
+
+	class TailNode extends LockFreeNode<T> {
+		TailNode() {
+			super(null, MAX_LEVEL);
+			for (int level = 0; level <= MAX_LEVEL; level++) {
+				next[level] = new AtomicMarkableReference<LockFreeNode<T>>(null, false);
+			}
+		}
+
+		int compareTo(T t) {
+			return 1;
+		}
+	}
+}
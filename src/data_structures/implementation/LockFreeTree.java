@@ -2,76 +2,52 @@ package data_structures.implementation;
 
 import data_structures.Sorted;
 
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.atomic.AtomicStampedReference;
-//only needed for toString
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 
-public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key> {
+/*
+ * Non-blocking BST of Ellen, Fatourou, Ruppert and van Breugel. Child
+ * pointers and update fields are plain volatile fields CASed through
+ * VarHandles. An update field holds only an Info; its state follows from
+ * it: a DInfo on the parent it removes means MARK, otherwise the Info is
+ * IFLAG or DFLAG until the operation sets its done flag, and CLEAN after.
+ * Unflagging thus keeps the Info in place, as the stamped version did, so
+ * a flag CAS still fails on any Info installed after it was read.
+ */
+public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key>, Iterable<Key>, Contended {
     // State array
 	final static int CLEAN = 1, MARK = 2, IFLAG = 3, DFLAG = 4, INTERNAL = 5, LEAF = 6, DUMMY = 7;
-    Internal root;
-
-    /*** Class ***/
-    /* Update */
-    class Update {
-        AtomicStampedReference<Info> infoASR;
-
-        Update(Info info, int state) {
-            infoASR = new AtomicStampedReference<Info>(info, state);
-        }
-
-        int getState() {
-            return infoASR.getStamp();
-        }
-
-        Info getInfo() {
-            return infoASR.getReference();
-        }
-
-        Info get(int[] stateHolder) {
-            return infoASR.get(stateHolder);
-        }
-
-        boolean compareAndSet(Info er, Info nr, int es, int ns) {
-            return infoASR.compareAndSet(er, nr, es, ns);
-        }
 
-        public Update clone() {
-            int[] stateHolder = new int[1];
-            Info info = get(stateHolder);
-
-            return new Update(info, stateHolder[0]);
-        }
-        
-        //@Override
-        public String toString() {
-        	String state = "CLEAN";
-        	switch(getState()) {
-                case IFLAG:
-                    state="IFLAG";
-                    break;
-                case MARK:
-                	state="MARK";
-                    break;
-                case DFLAG:
-                	state="DFLAG";
-                    break;
-        	}
-        	String output = "Update:(info:" + (getInfo() == null ? "null" :getInfo().toString()) +
-        					", state:" + state +")";
-        	return output;
+    private static final VarHandle LEFT, RIGHT, UPDATE;
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            LEFT = lookup.findVarHandle(LockFreeTree.Internal.class, "left", LockFreeTree.LFTNode.class);
+            RIGHT = lookup.findVarHandle(LockFreeTree.Internal.class, "right", LockFreeTree.LFTNode.class);
+            UPDATE = lookup.findVarHandle(LockFreeTree.Internal.class, "update", LockFreeTree.Info.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
         }
     }
 
+    Internal root;
+    final SizeCounter size = new SizeCounter();
+    final ContentionStats stats = new ContentionStats();
+
+    /*** Class ***/
     /* LFTNode */
     abstract class LFTNode implements Comparable<Key> {
         final static int SIZE = 4;
         Key key;
 
         abstract boolean isLeaf();
-        abstract void toString(List<Key> leafs);
 
         public int compareTo(Key k) {
             if(k == null)
@@ -82,51 +58,54 @@ public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key> {
 
             return key.compareTo(k);
         }
-        
+
         abstract int getType();
     }
 
     /* Internal LFTNode */
     class Internal extends LFTNode {
-        AtomicReference<LFTNode> left, right;
-        Update update;
+        volatile LFTNode left, right;
+        // null until the first operation flags this node, which reads as CLEAN
+        volatile Info update;
 
         Internal(Key k, LFTNode l, LFTNode r) {
             key = k;
-            left = new AtomicReference<LFTNode>(l);
-            right = new AtomicReference<LFTNode>(r);
-            update = new Update(null, CLEAN);
+            left = l;
+            right = r;
         }
-        
+
         boolean isLeaf() {
         	return false;
         }
-        
+
         int getType() {
             return INTERNAL;
         }
 
         LFTNode getLeft() {
-            return left.get();
+            return left;
         }
 
         LFTNode getRight() {
-            return right.get();
+            return right;
         }
-        
-        public String toString() {
-        	String output = key == null ? "" : String.valueOf(key);
-			return output;
+
+        /* state of this node when its update field holds info */
+        int state(Info info) {
+            if(info instanceof DInfo && ((DInfo)info).p == this)
+                return MARK;
+            if(info == null || info.done)
+                return CLEAN;
+            return info instanceof IInfo ? IFLAG : DFLAG;
         }
 
-        void toString(List<Key> lfs) {
-            LFTNode l = left.get();
-            LFTNode r = right.get();
-           	if (l != null)
-           		l.toString(lfs);
+        boolean casUpdate(Info expected, Info info) {
+            return UPDATE.compareAndSet(this, expected, info);
+        }
 
-           	if (r != null)
-	       		r.toString(lfs);
+        public String toString() {
+        	String output = key == null ? "" : String.valueOf(key);
+			return output;
         }
     }
 
@@ -139,27 +118,23 @@ public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key> {
         boolean isLeaf() {
         	return true;
         }
-        
+
         int getType() {
             return LEAF;
         }
-        
+
         public String toString() {
         	return key.toString();
         }
-
-        void toString(List<Key> leafs) {
-            leafs.add(key);
-        }
     }
-    
+
     class DummyLeaf extends Leaf {
-    	
+
     	String id = "left";
     	DummyLeaf() {
     		super(null);
     	}
-    	
+
     	DummyLeaf(String _id) {
     		super(null);
     		id = _id;
@@ -168,27 +143,25 @@ public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key> {
     	public int compareTo(Key k) {
     		return -1;
     	}
-    	
+
     	boolean isLeaf() {
         	return true;
         }
-    	
+
     	int getType() {
             return DUMMY;
         }
-    	
+
     	public String toString() {
     		return "";
     	}
-    	
-    	void toString(List<Key> leafs) {
-            return;
-        }
     }
 
     /* Info */
     abstract class Info {
         Leaf l;
+        // set when the flag this Info stands for is taken off again
+        volatile boolean done;
     }
 
     /* IInfo */
@@ -200,58 +173,56 @@ public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key> {
             this.l = l;
             this.newInternal = newInternal;
         }
-        
+
         public String toString() {
-        	return "IInfo:(p:" + p.toString(0) + ", l:" + l.toString(0) + ", new:" + newInternal.toString(0) + ")";
+        	return "IInfo:(p:" + p.toString() + ", l:" + l.toString() + ", new:" + newInternal.toString() + ")";
         }
     }
 
     /* DInfo */
     class DInfo extends Info {
         Internal gp, p;
-        Update pupdate;
+        Info pinfo;
 
-        DInfo(Internal gp, Internal p, Leaf l, Update pupdate) {
+        DInfo(Internal gp, Internal p, Leaf l, Info pinfo) {
             this.gp = gp;
             this.p = p;
             this.l = l;
-            this.pupdate = pupdate;
+            this.pinfo = pinfo;
         }
     }
 
-    /* SearchLFT */
+    /* SearchLFT: the update fields are read before the child pointers */
     class SearchLFT {
         Internal gp, p;
         Leaf l;
-        Update pupdate, gpupdate;
+        Info pinfo, gpinfo;
+        int pstate, gpstate;
 
-        SearchLFT(Internal gp, Internal p, Leaf l,
-                Update pupdate, Update gpupdate) {
-            this.gp = gp;
-            this.p = p;
-            this.l = l;
-            this.pupdate = pupdate == null ? null : pupdate.clone();
-            this.gpupdate = gpupdate == null ? null : gpupdate.clone();
-        }
-        
         public String toString() {
         	String output = "SearchLFT:\tgp:" + ((gp == null) ? "null" : gp.toString()) +
         			"\n\t\tp:" + ((p == null) ? "null" : p.toString()) +
         			"\n\t\tl:" + ((l == null) ? "null" : l.toString()) +
-        			"\n\t\tpupdate:" + (pupdate == null ? "null" : pupdate.toString()) +
-        			"\n\t\tgpupdate:" + (gpupdate == null ? "null" : gpupdate.toString());
+        			"\n\t\tpstate:" + pstate +
+        			"\n\t\tgpstate:" + gpstate;
         	return output;
         }
     }
 
-    
+
     /*** Method ***/
-    
+
     public LockFreeTree() {
         DummyLeaf left = new DummyLeaf(), right = new DummyLeaf("right");
         root = new Internal(null, left, right);
     }
-    
+
+    /* A balanced tree holding items, built in O(n) when they are sorted already; see addAll */
+    public LockFreeTree(Collection<Key> items) {
+        this();
+        addAll(items);
+    }
+
     public Key max(Key a, Key b) {
         if (a == null) {
             if (b == null) return a;
@@ -264,30 +235,40 @@ public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key> {
 
     /* search */
     private SearchLFT search(Key k) {
+        SearchLFT r = new SearchLFT();
         LFTNode l = root;
-        Internal p = null, gp = null;
-        Update gpupdate = null, pupdate = null;
 
         while(!l.isLeaf()) {
-            gp = p;
-            p = (Internal)l;
-            gpupdate = pupdate;
-            pupdate = p.update;
+            r.gp = r.p;
+            r.gpinfo = r.pinfo;
+            r.gpstate = r.pstate;
+            r.p = (Internal)l;
+            r.pinfo = r.p.update;
+            r.pstate = r.p.state(r.pinfo);
+            l = l.compareTo(k) > 0 ? r.p.getLeft() : r.p.getRight();
+        }
+        r.l = (Leaf)l;
+        return r;
+    }
+
+    /* contains */
+    public boolean contains(Key k) {
+        // plain search: no SearchLFT, no helping
+        LFTNode l = root;
+        while(!l.isLeaf()) {
+            Internal p = (Internal)l;
             l = l.compareTo(k) > 0 ? p.getLeft() : p.getRight();
         }
-        return new SearchLFT(gp, p, (Leaf)l, pupdate, gpupdate);
+        return l.compareTo(k) == 0;
     }
-    
+
     /* add */
     public void add(Key k) {
         Internal newInternal;
         Leaf newSibling, newLeaf = new Leaf(k);
-        Update result;
         IInfo op;
         // contains the p and l from the pseudocode
         SearchLFT r;
-        int[] expState = new int[1];
-        Info expInfo;
 
         while(true) {
             r = search(k);
@@ -296,51 +277,104 @@ public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key> {
                 return;
             }
 
-            if(r.pupdate.getState() != CLEAN) {
-                help(r.pupdate);
+            if(r.pstate != CLEAN) {
+                help(r.pinfo, r.pstate);
             } else {
             	if (r.l.key == null) {
             		//this is the dummy leave so we need to construct a new one to save the universal key
             		newSibling = new DummyLeaf();
             		// if we're dealing with dummy this is the first insert
             		// we can construct the new subtree immediately
-            		newInternal = new Internal(null, new Leaf(k), newSibling);
+            		newInternal = new Internal(null, newLeaf, newSibling);
             	} else {
             		newSibling = new Leaf(r.l.key);
-            		newInternal = r.l.compareTo(k) < 0 
+            		newInternal = r.l.compareTo(k) < 0
             			? new Internal(max(k, r.l.key), newSibling, newLeaf)
             			: new Internal(max(k, r.l.key), newLeaf, newSibling);
             	}
             	op = new IInfo(r.p, r.l, newInternal);				// New InsertInfo with p,l,newInternal
                 // iflag CAS step
-                if(r.p.update.compareAndSet(r.pupdate.get(expState), op, expState[0], IFLAG)) {
+                if(r.p.casUpdate(r.pinfo, op)) {
+                	size.increment();
                 	helpInsert(op);		// the iflag CAS was succesful finish the insertion
                     return;
                 }
-                help(r.p.update);
+                help(r.p);
+            }
+        }
+    }
+
+    /* addAll */
+    /*
+     * Into an empty tree the distinct keys of the batch are built as one
+     * balanced subtree, out of sight of other threads, which is then put in
+     * place of the dummy leaf with a single insert; a concurrent add that
+     * gets there first makes the tree non-empty, and then every key is
+     * added on its own. Null keys are skipped either way.
+     */
+    public void addAll(Collection<Key> ts) {
+        List<Key> batch = new ArrayList<Key>(ts);
+        batch.removeIf(k -> k == null);
+        Collections.sort(batch);
+        int n = 0;
+        for (Key k : batch) {
+            if (n == 0 || batch.get(n - 1).compareTo(k) != 0)
+                batch.set(n++, k);
+        }
+        batch.subList(n, batch.size()).clear();
+        if (batch.isEmpty())
+            return;
+
+        LFTNode built = BalancedBuild.leafTree(new BalancedBuild.Nodes<LFTNode>() {
+            public LFTNode leaf(int i) {
+                return new Leaf(batch.get(i));
+            }
+
+            // keys below the first key of the right half go left, as search() does
+            public LFTNode inner(int mid, LFTNode left, LFTNode right) {
+                return new Internal(batch.get(mid), left, right);
+            }
+        }, batch.size());
+        // same shape as the first add makes: the real keys left of a dummy
+        Internal newInternal = new Internal(null, built, new DummyLeaf());
+
+        while(true) {
+            // the update field is read before the child, as in search
+            Info info = root.update;
+            int state = root.state(info);
+            LFTNode l = root.getLeft();
+            if(l.getType() != DUMMY)
+                break;
+            if(state != CLEAN) {
+                help(info, state);
+                continue;
+            }
+            IInfo op = new IInfo(root, (Leaf)l, newInternal);
+            if(root.casUpdate(info, op)) {
+                size.add(batch.size());
+                helpInsert(op);
+                return;
             }
+            help(root);
         }
+        for (Key k : ts)
+            if (k != null)
+                add(k);
     }
 
     /* helpInsert */
     private void helpInsert(IInfo op) {
-    	if (op == null) {
-    		return;
-    	}
-
     	// ichild CAS step
         casChild(op.p, op.l, op.newInternal);
 
-        // iunflag CAS step
-        op.p.update.compareAndSet(op, op, IFLAG, CLEAN);
+        // iunflag step
+        op.done = true;
     }
 
     /* remove */
     public void remove(Key k) {
         DInfo op;
         SearchLFT r;
-        int[] expState = new int[1];
-        Info expInfo;
 
         while(true) {
             r = search(k);
@@ -351,19 +385,21 @@ public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key> {
 
             // Parent and grandparent must be CLEAN in order to perform the
             // remove operation, make sure they are
-            if(r.gpupdate.getState() != CLEAN) {
-                help(r.gpupdate);
-            } else if(r.pupdate.getState() != CLEAN) {
-                help(r.pupdate);
+            if(r.gpstate != CLEAN) {
+                help(r.gpinfo, r.gpstate);
+            } else if(r.pstate != CLEAN) {
+                help(r.pinfo, r.pstate);
             } else {
-                op = new DInfo(r.gp, r.p, r.l, r.pupdate);
+                op = new DInfo(r.gp, r.p, r.l, r.pinfo);
                 // dflag CAS step
-                if(r.gp.update.compareAndSet(r.gpupdate.get(expState), op, expState[0], DFLAG)) {
-                    if(helpDelete(op))
+                if(r.gp.casUpdate(r.gpinfo, op)) {
+                    if(helpDelete(op)) {
+                        size.decrement();
                         return;
+                    }
                 } else {
                     // Failed to perform dflag CAS. First help other operation
-                    help(r.gp.update);
+                    help(r.gp);
                 }
             }
         }
@@ -371,56 +407,48 @@ public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key> {
 
     /* helpDelete */
     private boolean helpDelete(DInfo op) {
-    	if (op == null)
-    		return false;
-    	
-        int[] stateHolder = new int[1];
-        Info info = op.pupdate.get(stateHolder);
-
         // mark CAS step
-        if(op.p.update.compareAndSet(info, op, stateHolder[0], MARK)) {
+        if(op.p.casUpdate(op.pinfo, op)) {
             helpMarked(op);
             return true;
-        } else {
-            //if(info == op && stateHolder[0] == MARK) {
-            if(op.p.update.getState() == MARK && op.p.update.getInfo() == op) {
-                helpMarked(op);
-                return true;
-            }
-
-            help(op.p.update);
+        }
 
-            // Failed to mark the parent LFTNode. Remove DFLAG and restart.
-            // backtrack CAS step
-            op.gp.update.compareAndSet(op, op, DFLAG, CLEAN);
-            return false;
+        Info info = op.p.update;
+        if(info == op) {
+            // someone else marked the parent for this operation
+            helpMarked(op);
+            return true;
         }
+
+        help(info, op.p.state(info));
+
+        // Failed to mark the parent LFTNode. Remove DFLAG and restart.
+        // backtrack step
+        op.done = true;
+        return false;
     }
 
     /* helpMarked */
     private void helpMarked(DInfo op) {
-    	if (op == null)
-    		return;
- 
         LFTNode right = op.p.getRight(),
              other = right == op.l ? op.p.getLeft() : right;
 
         // dchild CAS step
         casChild(op.gp, op.p, other);
 
-        // dunflag CAS step
-        op.gp.update.compareAndSet(op, op, DFLAG, CLEAN);
+        // dunflag step
+        op.done = true;
     }
 
     /* help */
-    private void help(Update u) {
-    	if (u == null)
-    		return;
-    				
-        int[] stateHolder = new int[1];
-        Info info = u.get(stateHolder);
-
-        switch(stateHolder[0]) {
+    private void help(Internal node) {
+        Info info = node.update;
+        help(info, node.state(info));
+    }
+
+    private void help(Info info, int state) {
+        stats.helped(state);
+        switch(state) {
             case IFLAG:
                 helpInsert((IInfo)info);
                 break;
@@ -435,22 +463,102 @@ public class LockFreeTree<Key extends Comparable<Key>> implements Sorted<Key> {
 
     /* casChild */
     private void casChild(Internal parent, LFTNode oldLFTNode, LFTNode newLFTNode) {
-    	if (parent == null || newLFTNode == null) {
-    		return;
-    	}
-    	
     	if(newLFTNode.compareTo(parent.key) < 0) {
-    		parent.left.compareAndSet(oldLFTNode, newLFTNode);
+    		LEFT.compareAndSet(parent, oldLFTNode, newLFTNode);
     	}
         else {
-            parent.right.compareAndSet(oldLFTNode, newLFTNode);
+            RIGHT.compareAndSet(parent, oldLFTNode, newLFTNode);
+        }
+    }
+
+
+    /* size */
+    public int size() {
+        return size.get();
+    }
+
+    public ContentionStats contentionStats() {
+        return stats;
+    }
+
+    /* range */
+    /*
+     * Returns the keys k with from <= k < to, in order, as they all were at
+     * one moment; a null bound leaves that side open. Writers are never
+     * blocked: the scan records the update field of every Internal it passes
+     * before reading its children, and afterwards checks that none of them
+     * changed. Every child CAS flags the parent with a fresh Info first, so
+     * unchanged CLEAN update fields mean the scanned part of the tree stood
+     * still from the first read until the check. Otherwise it helps the
+     * operation in the way and scans again.
+     */
+    public List<Key> range(Key from, Key to) {
+        List<Key> keys = new ArrayList<Key>();
+        List<Internal> visited = new ArrayList<Internal>();
+        List<Info> seen = new ArrayList<Info>();
+
+        while(true) {
+            keys.clear();
+            visited.clear();
+            seen.clear();
+            Internal busy = collect(from, to, keys, visited, seen);
+            if(busy == null && validate(visited, seen))
+                return keys;
+            if(busy != null)
+                help(busy);
+        }
+    }
+
+    /* iterator over a snapshot of the whole tree, see range */
+    public Iterator<Key> iterator() {
+        return Collections.unmodifiableList(range(null, null)).iterator();
+    }
+
+    /* collect: returns a node that is not CLEAN, or null when all of them are */
+    private Internal collect(Key from, Key to, List<Key> keys, List<Internal> visited, List<Info> seen) {
+        // explicit stack, the tree is unbalanced and can be as deep as it is large
+        Deque<LFTNode> stack = new ArrayDeque<LFTNode>();
+        stack.push(root);
+
+        while(!stack.isEmpty()) {
+            LFTNode node = stack.pop();
+            if(node.isLeaf()) {
+                // dummy leaves have no key
+                if(node.key != null
+                        && (from == null || node.key.compareTo(from) >= 0)
+                        && (to == null || node.key.compareTo(to) < 0))
+                    keys.add(node.key);
+                continue;
+            }
+
+            Internal p = (Internal)node;
+            // the update field is read before the children
+            Info info = p.update;
+            if(p.state(info) != CLEAN)
+                return p;
+            visited.add(p);
+            seen.add(info);
+
+            // keys below p.key are on the left, the others on the right;
+            // pushed right first so the left side comes out first
+            if(p.key == null || to == null || p.key.compareTo(to) < 0)
+                stack.push(p.getRight());
+            if(from == null || p.compareTo(from) > 0)
+                stack.push(p.getLeft());
+        }
+        return null;
+    }
+
+    /* validate: a CLEAN Info stays CLEAN, so only the reference is checked */
+    private boolean validate(List<Internal> visited, List<Info> seen) {
+        for(int i = 0; i < visited.size(); i++) {
+            if(visited.get(i).update != seen.get(i))
+                return false;
         }
+        return true;
     }
-    
 
     public String toString() {
-    	List<Key> leafs = new ArrayList<Key>();
-    	root.toString(leafs);
-    	return leafs.toString();
+    	return range(null, null).toString();
     }
 }
@@ -0,0 +1,78 @@
+package data_structures.implementation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * Fixed-size int records kept outside the Java heap, in direct ByteBuffers.
+ * A record is referred to by an int instead of an object reference, so a
+ * structure built on the arena is a handful of objects for the GC no matter
+ * how many nodes it has. Memory grows one chunk at a time; freed records are
+ * kept in a free list, linked through their first field.
+ *
+ * Not thread-safe: the owning structure serializes access.
+ */
+final class NodeArena {
+	// reference 0 is never handed out, so zeroed memory reads as null links
+	static final int NULL = 0;
+
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+
+	private final int recordBytes;
+	private ByteBuffer[] chunks = new ByteBuffer[4];
+	private int nrChunks = 0;
+	private int nextRecord = 1;
+	private int freeList = NULL;
+
+	NodeArena(int fieldsPerRecord) {
+		this.recordBytes = fieldsPerRecord * 4;
+	}
+
+	int allocate() {
+		int ref;
+		if (freeList != NULL) {
+			ref = freeList;
+			freeList = get(ref, 0);
+			// hand out records zeroed, like fresh memory
+			for (int field = 0; field < recordBytes / 4; field++) {
+				set(ref, field, 0);
+			}
+			return ref;
+		}
+
+		ref = nextRecord++;
+		if (ref < 0) {
+			throw new OutOfMemoryError("NodeArena is limited to 2^31 records");
+		}
+		int chunk = ref >>> CHUNK_SHIFT;
+		if (chunk == nrChunks) {
+			if (nrChunks == chunks.length) {
+				ByteBuffer[] grown = new ByteBuffer[chunks.length * 2];
+				System.arraycopy(chunks, 0, grown, 0, nrChunks);
+				chunks = grown;
+			}
+			chunks[nrChunks++] = ByteBuffer.allocateDirect(CHUNK_RECORDS * recordBytes).order(ByteOrder.nativeOrder());
+		}
+		return ref;
+	}
+
+	void free(int ref) {
+		set(ref, 0, freeList);
+		freeList = ref;
+	}
+
+	int get(int ref, int field) {
+		return chunks[ref >>> CHUNK_SHIFT].getInt((ref & CHUNK_MASK) * recordBytes + field * 4);
+	}
+
+	void set(int ref, int field, int value) {
+		chunks[ref >>> CHUNK_SHIFT].putInt((ref & CHUNK_MASK) * recordBytes + field * 4, value);
+	}
+
+	/* off-heap bytes reserved so far */
+	long reservedBytes() {
+		return (long) nrChunks * CHUNK_RECORDS * recordBytes;
+	}
+}
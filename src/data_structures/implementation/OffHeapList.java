@@ -0,0 +1,215 @@
+package data_structures.implementation;
+
+import data_structures.IntSorted;
+import data_structures.Sorted;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * CoarseGrainedList with its nodes in a NodeArena: a node is an int
+ * reference to a {key, next} record off the heap.
+ */
+public class OffHeapList implements Sorted<Integer>, IntSorted {
+
+	// record layout
+	private static final int KEY = 0, NEXT = 1;
+
+	private final NodeArena _arena = new NodeArena(2);
+	private final int _head;
+	private final int _tail;
+	private Lock _lock = new ReentrantLock();
+	// only written under _lock, volatile so size() needs no lock
+	private volatile int _size = 0;
+
+	public OffHeapList() {
+		// the sentinels are recognized by reference, so every int is a valid key
+		_head = _arena.allocate();
+		_tail = _arena.allocate();
+		_arena.set(_head, KEY, Integer.MIN_VALUE);
+		_arena.set(_tail, KEY, Integer.MAX_VALUE);
+		_arena.set(_head, NEXT, _tail);
+	}
+
+	public void add(Integer t) {
+		add(t.intValue());
+	}
+
+	public void remove(Integer t) {
+		remove(t.intValue());
+	}
+
+	public boolean contains(Integer t) {
+		return contains(t.intValue());
+	}
+
+	public void addAll(Collection<Integer> ts) {
+		addAll(unbox(ts));
+	}
+
+	public void removeAll(Collection<Integer> ts) {
+		removeAll(unbox(ts));
+	}
+
+	public void add(int key) {
+		int prev, curr;
+		_lock.lock();
+		try
+		{
+			prev = _head;
+			curr = _arena.get(prev, NEXT);
+			while (_arena.get(curr, KEY) < key)
+			{
+				//finding the place to add the element
+				prev = curr;
+				curr = _arena.get(curr, NEXT);
+			}
+			int node = _arena.allocate();
+			_arena.set(node, KEY, key);
+			_arena.set(node, NEXT, curr);
+			_arena.set(prev, NEXT, node);
+			_size++;
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public void remove(int key) {
+		int prev, curr;
+		_lock.lock();
+		try
+		{
+			prev = _head;
+			curr = _arena.get(prev, NEXT);
+			while (_arena.get(curr, KEY) < key)
+			{
+				prev = curr;
+				curr = _arena.get(curr, NEXT);
+			}
+			if (curr != _tail && _arena.get(curr, KEY) == key)
+			{
+				_arena.set(prev, NEXT, _arena.get(curr, NEXT));
+				_arena.free(curr);
+				_size--;
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public void addAll(int[] keys) {
+		// a sorted batch is merged into the list in one walk
+		int[] batch = keys.clone();
+		Arrays.sort(batch);
+		int prev, curr;
+		_lock.lock();
+		try
+		{
+			prev = _head;
+			curr = _arena.get(prev, NEXT);
+			for (int key : batch)
+			{
+				while (_arena.get(curr, KEY) < key)
+				{
+					prev = curr;
+					curr = _arena.get(curr, NEXT);
+				}
+				int node = _arena.allocate();
+				_arena.set(node, KEY, key);
+				_arena.set(node, NEXT, curr);
+				_arena.set(prev, NEXT, node);
+				prev = node;
+				_size++;
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public void removeAll(int[] keys) {
+		int[] batch = keys.clone();
+		Arrays.sort(batch);
+		int prev, curr;
+		_lock.lock();
+		try
+		{
+			prev = _head;
+			curr = _arena.get(prev, NEXT);
+			for (int key : batch)
+			{
+				while (_arena.get(curr, KEY) < key)
+				{
+					prev = curr;
+					curr = _arena.get(curr, NEXT);
+				}
+				if (curr != _tail && _arena.get(curr, KEY) == key)
+				{
+					int next = _arena.get(curr, NEXT);
+					_arena.set(prev, NEXT, next);
+					_arena.free(curr);
+					curr = next;
+					_size--;
+				}
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public boolean contains(int key) {
+		int curr;
+		_lock.lock();
+		try
+		{
+			curr = _arena.get(_head, NEXT);
+			while (_arena.get(curr, KEY) < key)
+			{
+				curr = _arena.get(curr, NEXT);
+			}
+			return curr != _tail && _arena.get(curr, KEY) == key;
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	static int[] unbox(Collection<Integer> ts) {
+		int[] keys = new int[ts.size()];
+		int i = 0;
+		for (Integer t : ts)
+			keys[i++] = t;
+		return keys;
+	}
+
+	public String toString() {
+		StringBuilder ret = new StringBuilder("[");
+		_lock.lock();
+		try
+		{
+			for (int curr = _arena.get(_head, NEXT); curr != _tail; curr = _arena.get(curr, NEXT)) {
+				if (ret.length() > 1)
+					ret.append(", ");
+				ret.append(_arena.get(curr, KEY));
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+		return ret.append("]").toString();
+	}
+}
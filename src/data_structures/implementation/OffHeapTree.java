@@ -0,0 +1,304 @@
+package data_structures.implementation;
+
+import data_structures.IntSorted;
+import data_structures.Sorted;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * CoarseGrainedTree with its nodes in a NodeArena: a node is an int
+ * reference to a {key, left, right} record off the heap. Walks the tree
+ * iteratively, so deep (unbalanced) trees cannot overflow the stack.
+ */
+public class OffHeapTree implements Sorted<Integer>, IntSorted {
+
+	// record layout
+	private static final int KEY = 0, LEFT = 1, RIGHT = 2;
+	private static final int NULL = NodeArena.NULL;
+
+	private final NodeArena arena = new NodeArena(3);
+	private int root = NULL;
+
+	private Lock lock = new ReentrantLock();
+	// only written under lock, volatile so size() needs no lock
+	private volatile int size = 0;
+
+	public void add(Integer t) {
+		add(t.intValue());
+	}
+
+	public void remove(Integer t) {
+		remove(t.intValue());
+	}
+
+	public boolean contains(Integer t) {
+		return contains(t.intValue());
+	}
+
+	public void addAll(Collection<Integer> ts) {
+		addAll(OffHeapList.unbox(ts));
+	}
+
+	public void removeAll(Collection<Integer> ts) {
+		removeAll(OffHeapList.unbox(ts));
+	}
+
+	public void add(int key) {
+		lock.lock();
+		try {
+			addLocked(key);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void remove(int key) {
+		lock.lock();
+		try {
+			removeLocked(key);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void addAll(int[] keys) {
+		int[] batch = keys.clone();
+		Arrays.sort(batch);
+		lock.lock();
+		try {
+			addMedianFirst(batch, 0, batch.length);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void removeAll(int[] keys) {
+		int[] batch = keys.clone();
+		Arrays.sort(batch);
+		lock.lock();
+		try {
+			removeSorted(batch);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Adds the sorted batch[from..to) middle key first, so the batch forms a
+	 * balanced subtree instead of a chain of right children.
+	 */
+	private void addMedianFirst(int[] batch, int from, int to) {
+		if (from >= to)
+			return;
+		int mid = (from + to) >>> 1;
+		addLocked(batch[mid]);
+		addMedianFirst(batch, from, mid);
+		addMedianFirst(batch, mid + 1, to);
+	}
+
+	/* caller holds lock */
+	private void addLocked(int key) {
+		int addNode = arena.allocate();
+		arena.set(addNode, KEY, key);
+		size++;
+		if (root == NULL) {
+			// Add the new node when root is not available
+			root = addNode;
+			return;
+		}
+
+		int curr = root;
+		while (true) {
+			// When key is smaller than or equal to the current node,
+			// it goes to the left, otherwise to the right
+			int side = key <= arena.get(curr, KEY) ? LEFT : RIGHT;
+			int next = arena.get(curr, side);
+			if (next == NULL) {
+				arena.set(curr, side, addNode);
+				return;
+			}
+			curr = next;
+		}
+	}
+
+	/*
+	 * caller holds lock; removes the sorted batch in one pass down the tree,
+	 * as IntCoarseGrainedTree.removeSorted does: every node splits the keys
+	 * between its two subtrees. The subtrees still to do are kept on an
+	 * explicit stack, as {parent, side, from, to} with parent NULL for the
+	 * root, so a left subtree is always done before its parent is removed.
+	 */
+	private void removeSorted(int[] batch) {
+		int[] stack = new int[16];
+		int depth = 0;
+		stack = push(stack, depth, NULL, LEFT, 0, batch.length);
+		depth += 4;
+		while (depth > 0) {
+			depth -= 4;
+			int parent = stack[depth], side = stack[depth + 1], from = stack[depth + 2], to = stack[depth + 3];
+			int curr = parent == NULL ? root : arena.get(parent, side);
+			while (curr != NULL && from < to) {
+				int currKey = arena.get(curr, KEY);
+				int lo = IntCoarseGrainedTree.firstNotBelow(batch, from, to, currKey), hi = lo;
+				while (hi < to && batch[hi] == currKey)
+					hi++;
+				if (lo == hi) {
+					// the smaller keys go left, the larger ones right
+					if (from < lo) {
+						stack = push(stack, depth, curr, LEFT, from, lo);
+						depth += 4;
+					}
+					parent = curr;
+					side = RIGHT;
+					curr = arena.get(curr, RIGHT);
+					from = hi;
+					continue;
+				}
+				if (arena.get(curr, LEFT) != NULL && arena.get(curr, RIGHT) != NULL) {
+					// Case 1: removeNode has two children
+					// Come back to it with the other equal keys and the larger
+					// ones, after the smaller ones are removed from the left
+					// subtree: its new key may be one of them
+					stack = push(stack, depth, parent, side, lo + 1, to);
+					stack = push(stack, depth + 4, curr, LEFT, from, lo);
+					depth += 8;
+					// Replace its key with the minimum key in the right subtree,
+					// then unlink the node holding that minimum key
+					int minParent = curr, min = arena.get(curr, RIGHT);
+					while (arena.get(min, LEFT) != NULL) {
+						minParent = min;
+						min = arena.get(min, LEFT);
+					}
+					arena.set(curr, KEY, arena.get(min, KEY));
+					arena.set(minParent, minParent == curr ? RIGHT : LEFT, arena.get(min, RIGHT));
+					arena.free(min);
+					size--;
+					break;
+				}
+				size--;
+				// Case 2: removeNode has one child
+				// Case 3: removeNode has none children
+				// equal keys can be in either subtree, so the other ones go to the child
+				int child = arena.get(curr, LEFT) != NULL ? arena.get(curr, LEFT) : arena.get(curr, RIGHT);
+				if (parent == NULL)
+					root = child;
+				else
+					arena.set(parent, side, child);
+				// the side that is gone needs no search
+				if (arena.get(curr, LEFT) != NULL)
+					to = hi - 1;
+				else
+					from = lo + 1;
+				arena.free(curr);
+				curr = child;
+			}
+		}
+	}
+
+	/* stack with the frame {parent, side, from, to} put at depth, grown when full */
+	private static int[] push(int[] stack, int depth, int parent, int side, int from, int to) {
+		if (depth + 4 > stack.length)
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		stack[depth] = parent;
+		stack[depth + 1] = side;
+		stack[depth + 2] = from;
+		stack[depth + 3] = to;
+		return stack;
+	}
+
+	/* caller holds lock */
+	private void removeLocked(int key) {
+		int parent = NULL, curr = root;
+		while (curr != NULL && arena.get(curr, KEY) != key) {
+			parent = curr;
+			curr = arena.get(curr, key < arena.get(curr, KEY) ? LEFT : RIGHT);
+		}
+		if (curr == NULL)
+			// Node does not exist in the tree
+			return;
+		size--;
+
+		if (arena.get(curr, LEFT) != NULL && arena.get(curr, RIGHT) != NULL) {
+			// Case 1: removeNode has two children
+			// Replace its key with the minimum key in the right subtree,
+			// then unlink the node holding that minimum key
+			int minParent = curr, min = arena.get(curr, RIGHT);
+			while (arena.get(min, LEFT) != NULL) {
+				minParent = min;
+				min = arena.get(min, LEFT);
+			}
+			arena.set(curr, KEY, arena.get(min, KEY));
+			arena.set(minParent, minParent == curr ? RIGHT : LEFT, arena.get(min, RIGHT));
+			arena.free(min);
+			return;
+		}
+
+		// Case 2: removeNode has one child
+		// Case 3: removeNode has none children
+		int child = arena.get(curr, LEFT) != NULL ? arena.get(curr, LEFT) : arena.get(curr, RIGHT);
+		if (parent == NULL)
+			root = child;
+		else if (arena.get(parent, LEFT) == curr)
+			arena.set(parent, LEFT, child);
+		else
+			arena.set(parent, RIGHT, child);
+		arena.free(curr);
+	}
+
+	public boolean contains(int key) {
+		lock.lock();
+		try {
+			int curr = root;
+			while (curr != NULL) {
+				int currKey = arena.get(curr, KEY);
+				if (key == currKey)
+					return true;
+				curr = arena.get(curr, key < currKey ? LEFT : RIGHT);
+			}
+			return false;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public String toString() {
+		StringBuilder output = new StringBuilder("[");
+		lock.lock();
+		try {
+			// in-order walk with an explicit stack
+			int[] stack = new int[16];
+			int depth = 0, curr = root;
+			while (curr != NULL || depth > 0) {
+				while (curr != NULL) {
+					if (depth == stack.length) {
+						int[] grown = new int[stack.length * 2];
+						System.arraycopy(stack, 0, grown, 0, depth);
+						stack = grown;
+					}
+					stack[depth++] = curr;
+					curr = arena.get(curr, LEFT);
+				}
+				curr = stack[--depth];
+				if (output.length() > 1)
+					output.append(", ");
+				output.append(arena.get(curr, KEY));
+				curr = arena.get(curr, RIGHT);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		return output.append("]").toString();
+	}
+}
@@ -0,0 +1,742 @@
+package data_structures.implementation;
+
+import data_structures.Sorted;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Relaxed-balance AVL tree with optimistic concurrency control, after
+ * Bronson, Casper, Chafi and Olukotun, "A Practical Concurrent Binary
+ * Search Tree" (PPoPP 2010).
+ *
+ * Searches take no locks. Every node carries a version that changes when a
+ * rotation moves keys out of its subtree ("shrinks" it) or when it is
+ * unlinked; a search validates the version of the node it came from before
+ * trusting a child pointer, and retries from there otherwise. Updates lock
+ * only the node(s) they change. Removing a node with two children only
+ * clears its present flag, it stays as a routing node until a rebalance can
+ * splice it out. Heights are repaired and rotations done bottom-up after
+ * every update, so the depth stays O(log n) for any insertion order.
+ *
+ * Like LockFreeTree it is a set, adding a present key is a no-op.
+ */
+public class OptimisticAVLTree<T extends Comparable<T>> implements Sorted<T> {
+
+    // version bits
+    static final long UNLINKED = 1L, SHRINKING = 2L, SHRINK_COUNT_INCR = 4L;
+    // spins before waiting on the lock of a node that is being rotated
+    static final int SPIN_COUNT = 100;
+
+    // nodeCondition results, any other result is the height the node should have
+    static final int UNLINK_REQUIRED = -1, REBALANCE_REQUIRED = -2, NOTHING_REQUIRED = -3;
+
+    // attemptGet results
+    static final int ABSENT = 0, PRESENT = 1, RETRY = -1;
+
+    // Dummy AVLNode that is never rotated or unlinked
+    // the actual root is rootHolder.right
+    private final AVLNode rootHolder = new AVLNode(null, 1, false, null);
+    private final SizeCounter size = new SizeCounter();
+
+    /* version helpers */
+    static boolean isUnlinked(long version) {
+        return (version & UNLINKED) != 0;
+    }
+
+    static boolean isShrinking(long version) {
+        return (version & SHRINKING) != 0;
+    }
+
+    static boolean isShrinkingOrUnlinked(long version) {
+        return (version & (UNLINKED | SHRINKING)) != 0;
+    }
+
+    static long beginChange(long version) {
+        return version | SHRINKING;
+    }
+
+    static long endChange(long version) {
+        return version + SHRINK_COUNT_INCR;
+    }
+
+    int height(AVLNode node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /* contains */
+    public boolean contains(T t) {
+        while(true) {
+            AVLNode right = rootHolder.right;
+            if(right == null)
+                return false;
+
+            int cmp = t.compareTo(right.key);
+            if(cmp == 0)
+                return right.present;
+
+            long ovl = right.version;
+            if(isShrinkingOrUnlinked(ovl)) {
+                right.waitUntilShrinkCompleted(ovl);
+            } else if(right == rootHolder.right) {
+                int result = attemptGet(t, right, cmp, ovl);
+                if(result != RETRY)
+                    return result == PRESENT;
+            }
+            // else the root changed, retry
+        }
+    }
+
+    private int attemptGet(T t, AVLNode node, int dirToChild, long nodeOVL) {
+        while(true) {
+            AVLNode child = node.child(dirToChild);
+            if(child == null) {
+                // only a valid miss if node was not rotated since we arrived
+                if(node.version != nodeOVL)
+                    return RETRY;
+                return ABSENT;
+            }
+
+            int childCmp = t.compareTo(child.key);
+            if(childCmp == 0)
+                return child.present ? PRESENT : ABSENT;
+
+            long childOVL = child.version;
+            if(isShrinkingOrUnlinked(childOVL)) {
+                child.waitUntilShrinkCompleted(childOVL);
+                if(node.version != nodeOVL)
+                    return RETRY;
+                // else retry the child
+            } else if(child != node.child(dirToChild)) {
+                if(node.version != nodeOVL)
+                    return RETRY;
+                // else retry the child
+            } else {
+                // the traversal from node to child is valid if node did not shrink
+                if(node.version != nodeOVL)
+                    return RETRY;
+                int result = attemptGet(t, child, childCmp, childOVL);
+                if(result != RETRY)
+                    return result;
+                // else retry the child
+            }
+        }
+    }
+
+    /* add */
+    public void add(T t) {
+        update(t, true);
+    }
+
+    /* remove */
+    public void remove(T t) {
+        update(t, false);
+    }
+
+    /* size */
+    public int size() {
+        return size.get();
+    }
+
+    private void update(T t, boolean insert) {
+        while(true) {
+            AVLNode right = rootHolder.right;
+            if(right == null) {
+                // the tree is empty
+                if(!insert || attemptInsertIntoEmpty(t))
+                    return;
+            } else {
+                long ovl = right.version;
+                if(isShrinkingOrUnlinked(ovl)) {
+                    right.waitUntilShrinkCompleted(ovl);
+                } else if(right == rootHolder.right) {
+                    if(attemptUpdate(t, insert, rootHolder, right, ovl))
+                        return;
+                }
+            }
+        }
+    }
+
+    private boolean attemptInsertIntoEmpty(T t) {
+        rootHolder.lock();
+        try {
+            if(rootHolder.right != null)
+                return false;
+            rootHolder.right = new AVLNode(t, 1, true, rootHolder);
+            size.increment();
+            return true;
+        } finally {
+            rootHolder.unlock();
+        }
+    }
+
+    /*
+     * Returns false if the caller has to retry because node shrank or was
+     * unlinked since the caller read nodeOVL.
+     */
+    private boolean attemptUpdate(T t, boolean insert, AVLNode parent, AVLNode node, long nodeOVL) {
+        int cmp = t.compareTo(node.key);
+        if(cmp == 0)
+            return attemptNodeUpdate(insert, parent, node);
+
+        while(true) {
+            AVLNode child = node.child(cmp);
+            if(node.version != nodeOVL)
+                return false;
+
+            if(child == null) {
+                if(!insert)
+                    return true; // not present
+
+                boolean inserted = false;
+                AVLNode damaged = null;
+                node.lock();
+                try {
+                    // with node locked no new rotation can affect us
+                    if(node.version != nodeOVL)
+                        return false;
+                    // else a concurrent insert may have won, then retry at this node
+                    if(node.child(cmp) == null) {
+                        node.setChild(cmp, new AVLNode(t, 1, true, node));
+                        size.increment();
+                        inserted = true;
+                        damaged = fixHeight_nl(node);
+                    }
+                } finally {
+                    node.unlock();
+                }
+                if(inserted) {
+                    fixHeightAndRebalance(damaged);
+                    return true;
+                }
+            } else {
+                long childOVL = child.version;
+                if(isShrinkingOrUnlinked(childOVL)) {
+                    child.waitUntilShrinkCompleted(childOVL);
+                } else if(child != node.child(cmp)) {
+                    // child changed after we read its version, retry
+                } else {
+                    if(node.version != nodeOVL)
+                        return false;
+                    if(attemptUpdate(t, insert, node, child, childOVL))
+                        return true;
+                    // else retry the child
+                }
+            }
+        }
+    }
+
+    private boolean attemptNodeUpdate(boolean insert, AVLNode parent, AVLNode node) {
+        if(insert) {
+            // a routing node for t may just become present again
+            node.lock();
+            try {
+                if(isUnlinked(node.version))
+                    return false;
+                if(!node.present) {
+                    node.present = true;
+                    size.increment();
+                }
+                return true;
+            } finally {
+                node.unlock();
+            }
+        }
+
+        if(!node.present)
+            return true; // already removed
+
+        if(node.left == null || node.right == null) {
+            // node can be unlinked, that needs the parent locked as well
+            AVLNode damaged;
+            parent.lock();
+            try {
+                if(isUnlinked(parent.version) || node.parent != parent)
+                    return false;
+                node.lock();
+                try {
+                    if(!node.present)
+                        return true;
+                    if(!attemptUnlink_nl(parent, node))
+                        return false;
+                    size.decrement();
+                } finally {
+                    node.unlock();
+                }
+                damaged = fixHeight_nl(parent);
+            } finally {
+                parent.unlock();
+            }
+            fixHeightAndRebalance(damaged);
+            return true;
+        }
+
+        // node has two children, it stays as a routing node
+        node.lock();
+        try {
+            if(isUnlinked(node.version))
+                return false;
+            if(!node.present)
+                return true;
+            // retry if a child was removed in the meantime, node should be unlinked
+            if(node.left == null || node.right == null)
+                return false;
+            node.present = false;
+            size.decrement();
+            return true;
+        } finally {
+            node.unlock();
+        }
+    }
+
+    /* Splices out node, which must have at most one child. Both must be locked. */
+    private boolean attemptUnlink_nl(AVLNode parent, AVLNode node) {
+        AVLNode parentL = parent.left, parentR = parent.right;
+        if(parentL != node && parentR != node)
+            return false; // node is no longer a child of parent
+
+        AVLNode left = node.left, right = node.right;
+        if(left != null && right != null)
+            return false; // splicing is no longer possible
+
+        AVLNode splice = left != null ? left : right;
+        if(parentL == node)
+            parent.left = splice;
+        else
+            parent.right = splice;
+        if(splice != null)
+            splice.parent = parent;
+
+        node.version = UNLINKED;
+        node.present = false;
+        return true;
+    }
+
+    /*** Rebalancing ***/
+
+    private int nodeCondition(AVLNode node) {
+        AVLNode nL = node.left, nR = node.right;
+        if((nL == null || nR == null) && !node.present)
+            return UNLINK_REQUIRED;
+
+        int hN = node.height;
+        int hL0 = height(nL), hR0 = height(nR);
+        // any thread that changes a node promises to fix it, so either this
+        // read is consistent or somebody else is responsible for the node
+        int hNRepl = 1 + Math.max(hL0, hR0);
+        int bal = hL0 - hR0;
+
+        if(bal < -1 || bal > 1)
+            return REBALANCE_REQUIRED;
+        return hN != hNRepl ? hNRepl : NOTHING_REQUIRED;
+    }
+
+    private void fixHeightAndRebalance(AVLNode node) {
+        while(node != null && node.parent != null) {
+            int condition = nodeCondition(node);
+            if(condition == NOTHING_REQUIRED || isUnlinked(node.version))
+                return; // nothing to do, or no point in fixing this node
+
+            AVLNode next = node;
+            if(condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+                node.lock();
+                try {
+                    next = fixHeight_nl(node);
+                } finally {
+                    node.unlock();
+                }
+            } else {
+                AVLNode nParent = node.parent;
+                nParent.lock();
+                try {
+                    if(!isUnlinked(nParent.version) && node.parent == nParent) {
+                        node.lock();
+                        try {
+                            next = rebalance_nl(nParent, node);
+                        } finally {
+                            node.unlock();
+                        }
+                    }
+                    // else retry with the new parent
+                } finally {
+                    nParent.unlock();
+                }
+            }
+            node = next;
+        }
+    }
+
+    /*
+     * Fixes the height of a locked node and returns the lowest damaged node
+     * this thread is now responsible for, or null if there is none.
+     */
+    private AVLNode fixHeight_nl(AVLNode node) {
+        int condition = nodeCondition(node);
+        switch(condition) {
+            case REBALANCE_REQUIRED:
+            case UNLINK_REQUIRED:
+                // can't repair with only this lock
+                return node;
+            case NOTHING_REQUIRED:
+                return null;
+            default:
+                node.height = condition;
+                // the parent is damaged now
+                return node.parent;
+        }
+    }
+
+    /* nParent and n must be locked. Returns a damaged node or null. */
+    private AVLNode rebalance_nl(AVLNode nParent, AVLNode n) {
+        AVLNode nL = n.left, nR = n.right;
+
+        if((nL == null || nR == null) && !n.present) {
+            if(attemptUnlink_nl(nParent, n))
+                return fixHeight_nl(nParent);
+            return n; // retry
+        }
+
+        int hN = n.height;
+        int hL0 = height(nL), hR0 = height(nR);
+        int hNRepl = 1 + Math.max(hL0, hR0);
+        int bal = hL0 - hR0;
+
+        if(bal > 1) {
+            return rebalanceToRight_nl(nParent, n, nL, hR0);
+        } else if(bal < -1) {
+            return rebalanceToLeft_nl(nParent, n, nR, hL0);
+        } else if(hNRepl != hN) {
+            n.height = hNRepl;
+            // nParent is locked as well, try to fix it too
+            return fixHeight_nl(nParent);
+        }
+        return null;
+    }
+
+    private AVLNode rebalanceToRight_nl(AVLNode nParent, AVLNode n, AVLNode nL, int hR0) {
+        // nL is too tall, rotate right, first rotating nL left if nL.right is the taller child
+        nL.lock();
+        try {
+            int hL = nL.height;
+            if(hL - hR0 <= 1)
+                return n; // retry
+
+            AVLNode nLR = nL.right;
+            int hLL0 = height(nL.left);
+            int hLR0 = height(nLR);
+            if(hLL0 >= hLR0)
+                return rotateRight_nl(nParent, n, nL, hR0, hLL0, nLR, hLR0);
+
+            nLR.lock();
+            try {
+                // nLR's height may have changed since we read it
+                int hLR = nLR.height;
+                if(hLL0 >= hLR)
+                    return rotateRight_nl(nParent, n, nL, hR0, hLL0, nLR, hLR);
+
+                // only do a double rotation if it does not leave nL damaged
+                int hLRL = height(nLR.left);
+                int b = hLL0 - hLRL;
+                if(b >= -1 && b <= 1 && !((hLL0 == 0 || hLRL == 0) && !nL.present))
+                    return rotateRightOverLeft_nl(nParent, n, nL, hR0, hLL0, nLR, hLRL);
+            } finally {
+                nLR.unlock();
+            }
+            // fix nL first, n will be rebalanced afterwards if needed
+            return rebalanceToLeft_nl(n, nL, nLR, hLL0);
+        } finally {
+            nL.unlock();
+        }
+    }
+
+    private AVLNode rebalanceToLeft_nl(AVLNode nParent, AVLNode n, AVLNode nR, int hL0) {
+        // mirror image of rebalanceToRight_nl
+        nR.lock();
+        try {
+            int hR = nR.height;
+            if(hL0 - hR >= -1)
+                return n; // retry
+
+            AVLNode nRL = nR.left;
+            int hRL0 = height(nRL);
+            int hRR0 = height(nR.right);
+            if(hRR0 >= hRL0)
+                return rotateLeft_nl(nParent, n, hL0, nR, nRL, hRL0, hRR0);
+
+            nRL.lock();
+            try {
+                int hRL = nRL.height;
+                if(hRR0 >= hRL)
+                    return rotateLeft_nl(nParent, n, hL0, nR, nRL, hRL, hRR0);
+
+                int hRLR = height(nRL.right);
+                int b = hRR0 - hRLR;
+                if(b >= -1 && b <= 1 && !((hRR0 == 0 || hRLR == 0) && !nR.present))
+                    return rotateLeftOverRight_nl(nParent, n, hL0, nR, nRL, hRR0, hRLR);
+            } finally {
+                nRL.unlock();
+            }
+            return rebalanceToRight_nl(n, nR, nRL, hRR0);
+        } finally {
+            nR.unlock();
+        }
+    }
+
+    private AVLNode rotateRight_nl(AVLNode nParent, AVLNode n, AVLNode nL, int hR, int hLL, AVLNode nLR, int hLR) {
+        long nodeOVL = n.version;
+        AVLNode nPL = nParent.left;
+
+        // n loses nL's left subtree, searches passing n must retry
+        n.version = beginChange(nodeOVL);
+
+        n.left = nLR;
+        if(nLR != null)
+            nLR.parent = n;
+
+        nL.right = n;
+        n.parent = nL;
+
+        if(nPL == n)
+            nParent.left = nL;
+        else
+            nParent.right = nL;
+        nL.parent = nParent;
+
+        int hNRepl = 1 + Math.max(hLR, hR);
+        n.height = hNRepl;
+        nL.height = 1 + Math.max(hLL, hNRepl);
+
+        n.version = endChange(nodeOVL);
+
+        // n is the deepest damaged node, fix as much as the held locks allow
+        int balN = hLR - hR;
+        if(balN < -1 || balN > 1)
+            return n;
+        if((nLR == null || hR == 0) && !n.present)
+            return n;
+
+        int balL = hLL - hNRepl;
+        if(balL < -1 || balL > 1)
+            return nL;
+        if(hLL == 0 && !nL.present)
+            return nL;
+
+        return fixHeight_nl(nParent);
+    }
+
+    private AVLNode rotateLeft_nl(AVLNode nParent, AVLNode n, int hL, AVLNode nR, AVLNode nRL, int hRL, int hRR) {
+        long nodeOVL = n.version;
+        AVLNode nPL = nParent.left;
+
+        n.version = beginChange(nodeOVL);
+
+        n.right = nRL;
+        if(nRL != null)
+            nRL.parent = n;
+
+        nR.left = n;
+        n.parent = nR;
+
+        if(nPL == n)
+            nParent.left = nR;
+        else
+            nParent.right = nR;
+        nR.parent = nParent;
+
+        int hNRepl = 1 + Math.max(hL, hRL);
+        n.height = hNRepl;
+        nR.height = 1 + Math.max(hNRepl, hRR);
+
+        n.version = endChange(nodeOVL);
+
+        int balN = hRL - hL;
+        if(balN < -1 || balN > 1)
+            return n;
+        if((nRL == null || hL == 0) && !n.present)
+            return n;
+
+        int balR = hRR - hNRepl;
+        if(balR < -1 || balR > 1)
+            return nR;
+        if(hRR == 0 && !nR.present)
+            return nR;
+
+        return fixHeight_nl(nParent);
+    }
+
+    private AVLNode rotateRightOverLeft_nl(AVLNode nParent, AVLNode n, AVLNode nL, int hR, int hLL, AVLNode nLR, int hLRL) {
+        long nodeOVL = n.version;
+        long leftOVL = nL.version;
+
+        AVLNode nPL = nParent.left;
+        AVLNode nLRL = nLR.left;
+        AVLNode nLRR = nLR.right;
+        int hLRR = height(nLRR);
+
+        // both n and nL lose part of their subtree
+        n.version = beginChange(nodeOVL);
+        nL.version = beginChange(leftOVL);
+
+        n.left = nLRR;
+        if(nLRR != null)
+            nLRR.parent = n;
+
+        nL.right = nLRL;
+        if(nLRL != null)
+            nLRL.parent = nL;
+
+        nLR.left = nL;
+        nL.parent = nLR;
+        nLR.right = n;
+        n.parent = nLR;
+
+        if(nPL == n)
+            nParent.left = nLR;
+        else
+            nParent.right = nLR;
+        nLR.parent = nParent;
+
+        int hNRepl = 1 + Math.max(hLRR, hR);
+        n.height = hNRepl;
+        int hLRepl = 1 + Math.max(hLL, hLRL);
+        nL.height = hLRepl;
+        nLR.height = 1 + Math.max(hLRepl, hNRepl);
+
+        n.version = endChange(nodeOVL);
+        nL.version = endChange(leftOVL);
+
+        int balN = hLRR - hR;
+        if(balN < -1 || balN > 1)
+            return n;
+        if((nLRR == null || hR == 0) && !n.present)
+            return n;
+
+        int balLR = hLRepl - hNRepl;
+        if(balLR < -1 || balLR > 1)
+            return nLR;
+
+        return fixHeight_nl(nParent);
+    }
+
+    private AVLNode rotateLeftOverRight_nl(AVLNode nParent, AVLNode n, int hL, AVLNode nR, AVLNode nRL, int hRR, int hRLR) {
+        long nodeOVL = n.version;
+        long rightOVL = nR.version;
+
+        AVLNode nPL = nParent.left;
+        AVLNode nRLL = nRL.left;
+        AVLNode nRLR = nRL.right;
+        int hRLL = height(nRLL);
+
+        n.version = beginChange(nodeOVL);
+        nR.version = beginChange(rightOVL);
+
+        n.right = nRLL;
+        if(nRLL != null)
+            nRLL.parent = n;
+
+        nR.left = nRLR;
+        if(nRLR != null)
+            nRLR.parent = nR;
+
+        nRL.right = nR;
+        nR.parent = nRL;
+        nRL.left = n;
+        n.parent = nRL;
+
+        if(nPL == n)
+            nParent.left = nRL;
+        else
+            nParent.right = nRL;
+        nRL.parent = nParent;
+
+        int hNRepl = 1 + Math.max(hL, hRLL);
+        n.height = hNRepl;
+        int hRRepl = 1 + Math.max(hRLR, hRR);
+        nR.height = hRRepl;
+        nRL.height = 1 + Math.max(hNRepl, hRRepl);
+
+        n.version = endChange(nodeOVL);
+        nR.version = endChange(rightOVL);
+
+        int balN = hRLL - hL;
+        if(balN < -1 || balN > 1)
+            return n;
+        if((nRLL == null || hL == 0) && !n.present)
+            return n;
+
+        int balRL = hRRepl - hNRepl;
+        if(balRL < -1 || balRL > 1)
+            return nRL;
+
+        return fixHeight_nl(nParent);
+    }
+
+    public String toString() {
+        StringBuilder output = new StringBuilder();
+        toString(rootHolder.right, output);
+        return "[" + output + "]";
+    }
+
+    private void toString(AVLNode node, StringBuilder output) {
+        if(node == null)
+            return;
+        toString(node.left, output);
+        if(node.present) {
+            if(output.length() > 0)
+                output.append(", ");
+            output.append(node.key);
+        }
+        toString(node.right, output);
+    }
+
+
+    /* AVLNode class */
+    class AVLNode {
+        final T key;
+        volatile int height;
+        volatile long version;
+        // false for routing nodes that only remain to guide searches
+        volatile boolean present;
+        volatile AVLNode parent, left, right;
+        final Lock lock = new ReentrantLock();
+
+        AVLNode(T key, int height, boolean present, AVLNode parent) {
+            this.key = key;
+            this.height = height;
+            this.present = present;
+            this.parent = parent;
+        }
+
+        AVLNode child(int dir) {
+            return dir < 0 ? left : right;
+        }
+
+        void setChild(int dir, AVLNode node) {
+            if(dir < 0)
+                left = node;
+            else
+                right = node;
+        }
+
+        void lock() {
+            lock.lock();
+        }
+
+        void unlock() {
+            lock.unlock();
+        }
+
+        void waitUntilShrinkCompleted(long ovl) {
+            if(!isShrinking(ovl))
+                return;
+
+            for(int tries = 0; tries < SPIN_COUNT; tries++) {
+                if(version != ovl)
+                    return;
+                Thread.onSpinWait();
+            }
+            // the rotating thread holds the lock for the whole change
+            lock();
+            unlock();
+        }
+    }
+}
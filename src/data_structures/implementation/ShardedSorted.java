@@ -0,0 +1,386 @@
+package data_structures.implementation;
+
+import data_structures.Sorted;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/*
+ * Splits the key space into ranges, each held by its own shard, so that
+ * a structure with one lock gets one lock per range. Shard i holds the
+ * keys from bound i-1 up to, not including, bound i; a missing bound is
+ * infinite, so at first every key goes to shard 0.
+ *
+ * A shard that grows to more than twice the average of the others is
+ * split at the median of its keys, so bounds are always picked from the
+ * keys actually added, and the smallest adjacent pair of other shards is
+ * merged to keep the number of shards. The shards involved are rebuilt
+ * and the routing table is replaced as a whole (copy-on-write), so
+ * routing reads one volatile field. Operations hold the read lock of
+ * their shard; rebalancing takes the write locks of the shards it
+ * replaces and retires them, and an operation that finds its shard
+ * retired routes again.
+ *
+ * S need not iterate in key order (CoarseGrainedList goes by hash code),
+ * so the items of a shard are sorted by compareTo wherever their order
+ * counts: the bounds and the iterator. For a shard that does iterate in
+ * order, that sort is a single pass.
+ */
+public class ShardedSorted<T extends Comparable<T>, S extends Sorted<T> & Iterable<T>> implements Sorted<T>, Iterable<T> {
+	// no rebalancing below this many keys in a shard
+	private static final int MIN_REBALANCE = 64;
+	// one in this many adds checks whether its shard should be rebalanced
+	private static final int CHECK_INTERVAL = 64;
+
+	private final Supplier<S> factory;
+	private volatile Routing<T, S> routing;
+	private final ReentrantLock rebalanceLock = new ReentrantLock();
+
+	public ShardedSorted(Supplier<S> factory, int nrShards) {
+		if (nrShards < 1)
+			throw new IllegalArgumentException("nrShards should be > 0: " + nrShards);
+		this.factory = factory;
+		List<Shard<S>> shards = new ArrayList<Shard<S>>(nrShards);
+		for (int i = 0; i < nrShards; i++)
+			shards.add(new Shard<S>(factory.get()));
+		this.routing = new Routing<T, S>(new ArrayList<T>(Collections.nCopies(nrShards - 1, (T) null)), shards);
+	}
+
+	/* Picks the initial bounds from a sample of the expected keys instead of learning them by rebalancing */
+	public ShardedSorted(Supplier<S> factory, int nrShards, Collection<T> sample) {
+		this(factory, nrShards);
+		List<T> sorted = new ArrayList<T>(sample);
+		sorted.removeIf(t -> t == null);
+		Collections.sort(sorted);
+		List<T> bounds = new ArrayList<T>(nrShards - 1);
+		for (int i = 1; i < nrShards; i++)
+			bounds.add(sorted.isEmpty() ? null : sorted.get((int) ((long) sorted.size() * i / nrShards)));
+		this.routing = new Routing<T, S>(bounds, routing.shards);
+	}
+
+	public void add(T t) {
+		while (true) {
+			Routing<T, S> r = routing;
+			int i = r.shardFor(t);
+			Shard<S> shard = r.shards.get(i);
+			shard.gate.readLock().lock();
+			try {
+				if (shard.retired)
+					continue;
+				shard.sorted.add(t);
+			} finally {
+				shard.gate.readLock().unlock();
+			}
+			if (ThreadLocalRandom.current().nextInt(CHECK_INTERVAL) == 0)
+				rebalance(r, i);
+			return;
+		}
+	}
+
+	public void remove(T t) {
+		while (true) {
+			Shard<S> shard = routing.shard(t);
+			shard.gate.readLock().lock();
+			try {
+				if (shard.retired)
+					continue;
+				shard.sorted.remove(t);
+				return;
+			} finally {
+				shard.gate.readLock().unlock();
+			}
+		}
+	}
+
+	public boolean contains(T t) {
+		while (true) {
+			Shard<S> shard = routing.shard(t);
+			shard.gate.readLock().lock();
+			try {
+				if (shard.retired)
+					continue;
+				return shard.sorted.contains(t);
+			} finally {
+				shard.gate.readLock().unlock();
+			}
+		}
+	}
+
+	public void addAll(Collection<T> ts) {
+		List<T> rest = new ArrayList<T>(ts);
+		// each round hands every shard its part of the batch in one call; keys of a retired shard go round again
+		while (!rest.isEmpty()) {
+			Routing<T, S> r = routing;
+			List<List<T>> parts = r.split(rest);
+			rest = new ArrayList<T>();
+			for (int i = 0; i < parts.size(); i++) {
+				if (parts.get(i).isEmpty())
+					continue;
+				Shard<S> shard = r.shards.get(i);
+				shard.gate.readLock().lock();
+				try {
+					if (shard.retired)
+						rest.addAll(parts.get(i));
+					else
+						shard.sorted.addAll(parts.get(i));
+				} finally {
+					shard.gate.readLock().unlock();
+				}
+			}
+		}
+	}
+
+	public void removeAll(Collection<T> ts) {
+		List<T> rest = new ArrayList<T>(ts);
+		while (!rest.isEmpty()) {
+			Routing<T, S> r = routing;
+			List<List<T>> parts = r.split(rest);
+			rest = new ArrayList<T>();
+			for (int i = 0; i < parts.size(); i++) {
+				if (parts.get(i).isEmpty())
+					continue;
+				Shard<S> shard = r.shards.get(i);
+				shard.gate.readLock().lock();
+				try {
+					if (shard.retired)
+						rest.addAll(parts.get(i));
+					else
+						shard.sorted.removeAll(parts.get(i));
+				} finally {
+					shard.gate.readLock().unlock();
+				}
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Shard<S> shard : routing.shards)
+			size += shard.sorted.size();
+		return size;
+	}
+
+	/* Iterates over the shards in key order; each shard is iterated as its own iterator does, not all at one moment */
+	public Iterator<T> iterator() {
+		List<T> items = new ArrayList<T>();
+		for (Shard<S> shard : routing.shards)
+			items.addAll(sortedItems(shard));
+		return items.iterator();
+	}
+
+	public String toString() {
+		List<T> items = new ArrayList<T>();
+		for (T t : this)
+			items.add(t);
+		return items.toString();
+	}
+
+	/* The current bounds between the shards, null for an infinite one */
+	public List<T> bounds() {
+		return Collections.unmodifiableList(routing.bounds);
+	}
+
+	/*
+	 * Called now and then after an add to shard h of r. Does nothing unless
+	 * shard h holds more than twice the average of the other shards. Then it
+	 * splits shard h at its median and merges the adjacent pair of other
+	 * shards that holds the fewest keys, so the number of shards stays the
+	 * same. Without such a pair (two shards, or no pair smaller than shard
+	 * h) it moves the bound between shard h and its smaller neighbour to
+	 * the median of their keys instead.
+	 */
+	private void rebalance(Routing<T, S> r, int h) {
+		int n = r.shards.size();
+		if (n == 1 || !rebalanceLock.tryLock())
+			return;
+		try {
+			if (routing != r)
+				return;
+			int[] sizes = new int[n];
+			long total = 0;
+			for (int i = 0; i < n; i++) {
+				sizes[i] = r.shards.get(i).sorted.size();
+				total += sizes[i];
+			}
+			if (sizes[h] < MIN_REBALANCE || (long) sizes[h] * (n - 1) <= 2 * (total - sizes[h]))
+				return;
+
+			int k = -1;
+			for (int i = 0; i + 1 < n; i++) {
+				if (i != h && i + 1 != h && (k < 0 || sizes[i] + sizes[i + 1] < sizes[k] + sizes[k + 1]))
+					k = i;
+			}
+			if (k >= 0 && sizes[k] + sizes[k + 1] < sizes[h]) {
+				splitAndMerge(r, h, k);
+			} else {
+				int j = h == 0 ? 1
+						: h == n - 1 ? h - 1
+						: sizes[h - 1] < sizes[h + 1] ? h - 1 : h + 1;
+				moveBound(r, Math.min(h, j));
+			}
+		} finally {
+			rebalanceLock.unlock();
+		}
+	}
+
+	/* caller holds rebalanceLock; splits shard h, merges shards k and k + 1 */
+	private void splitAndMerge(Routing<T, S> r, int h, int k) {
+		Shard<S> hot = r.shards.get(h), first = r.shards.get(k), second = r.shards.get(k + 1);
+		// write locks in shard order, as no one else takes more than one
+		List<Shard<S>> locked = h < k ? Arrays.asList(hot, first, second) : Arrays.asList(first, second, hot);
+		for (Shard<S> shard : locked)
+			shard.gate.writeLock().lock();
+		try {
+			List<T> items = sortedItems(hot);
+			int split = median(items);
+			Shard<S> low = new Shard<S>(factory.get());
+			Shard<S> high = new Shard<S>(factory.get());
+			low.sorted.addAll(items.subList(0, split));
+			high.sorted.addAll(items.subList(split, items.size()));
+
+			List<T> mergedItems = new ArrayList<T>();
+			for (T t : first.sorted)
+				mergedItems.add(t);
+			for (T t : second.sorted)
+				mergedItems.add(t);
+			Shard<S> merged = new Shard<S>(factory.get());
+			merged.sorted.addAll(mergedItems);
+
+			// shard i holds the keys below bound i, the last one all above
+			List<T> bounds = new ArrayList<T>(r.bounds.size());
+			List<Shard<S>> shards = new ArrayList<Shard<S>>(r.shards.size());
+			for (int i = 0; i < r.shards.size(); i++) {
+				T upper = i < r.bounds.size() ? r.bounds.get(i) : null;
+				if (i == h) {
+					shards.add(low);
+					bounds.add(split < items.size() ? items.get(split) : upper);
+					shards.add(high);
+					bounds.add(upper);
+				} else if (i == k) {
+					shards.add(merged);
+					bounds.add(k + 1 < r.bounds.size() ? r.bounds.get(k + 1) : null);
+				} else if (i != k + 1) {
+					shards.add(r.shards.get(i));
+					bounds.add(upper);
+				}
+			}
+			bounds.remove(bounds.size() - 1);
+			publish(new Routing<T, S>(bounds, shards), locked);
+		} finally {
+			for (int i = locked.size() - 1; i >= 0; i--)
+				locked.get(i).gate.writeLock().unlock();
+		}
+	}
+
+	/* caller holds rebalanceLock; moves the bound between shards lo and lo + 1 */
+	private void moveBound(Routing<T, S> r, int lo) {
+		Shard<S> low = r.shards.get(lo), high = r.shards.get(lo + 1);
+		List<Shard<S>> locked = Arrays.asList(low, high);
+		low.gate.writeLock().lock();
+		high.gate.writeLock().lock();
+		try {
+			// the shards are next to each other, so their keys in order are those of low then high
+			List<T> items = sortedItems(low);
+			items.addAll(sortedItems(high));
+			int split = median(items);
+			if (split == items.size())
+				return;
+			Shard<S> newLow = new Shard<S>(factory.get());
+			Shard<S> newHigh = new Shard<S>(factory.get());
+			newLow.sorted.addAll(items.subList(0, split));
+			newHigh.sorted.addAll(items.subList(split, items.size()));
+
+			List<T> bounds = new ArrayList<T>(r.bounds);
+			bounds.set(lo, items.get(split));
+			List<Shard<S>> shards = new ArrayList<Shard<S>>(r.shards);
+			shards.set(lo, newLow);
+			shards.set(lo + 1, newHigh);
+			publish(new Routing<T, S>(bounds, shards), locked);
+		} finally {
+			high.gate.writeLock().unlock();
+			low.gate.writeLock().unlock();
+		}
+	}
+
+	/* The items of shard ordered by compareTo, whatever order its own iterator has */
+	private List<T> sortedItems(Shard<S> shard) {
+		List<T> items = new ArrayList<T>();
+		for (T t : shard.sorted)
+			items.add(t);
+		// merge sort, linear for items that are in order already
+		Collections.sort(items);
+		return items;
+	}
+
+	/* Where to cut the ordered items in two, such that equal keys end up on the same side */
+	private int median(List<T> items) {
+		int split = items.size() / 2;
+		while (split > 0 && split < items.size() && items.get(split - 1).compareTo(items.get(split)) == 0)
+			split--;
+		return split;
+	}
+
+	/* caller holds the write locks of the retired shards */
+	private void publish(Routing<T, S> next, List<Shard<S>> retired) {
+		// before the old shards are released, so waiting operations route again to the new ones
+		routing = next;
+		for (Shard<S> shard : retired)
+			shard.retired = true;
+	}
+
+	private static final class Shard<S> {
+		final S sorted;
+		final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+		// set under the write lock of gate, read under its read lock
+		boolean retired;
+
+		Shard(S sorted) {
+			this.sorted = sorted;
+		}
+	}
+
+	/* Never changed once published */
+	private static final class Routing<T extends Comparable<T>, S> {
+		final List<T> bounds;
+		final List<Shard<S>> shards;
+
+		Routing(List<T> bounds, List<Shard<S>> shards) {
+			this.bounds = bounds;
+			this.shards = shards;
+		}
+
+		/* the first shard whose upper bound lies above t; bounds only increase, a null one is infinite */
+		int shardFor(T t) {
+			int lo = 0, hi = bounds.size();
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				T bound = bounds.get(mid);
+				if (bound == null || t.compareTo(bound) < 0)
+					hi = mid;
+				else
+					lo = mid + 1;
+			}
+			return lo;
+		}
+
+		Shard<S> shard(T t) {
+			return shards.get(shardFor(t));
+		}
+
+		List<List<T>> split(List<T> ts) {
+			List<List<T>> parts = new ArrayList<List<T>>(shards.size());
+			for (int i = 0; i < shards.size(); i++)
+				parts.add(new ArrayList<T>());
+			for (T t : ts)
+				parts.get(shardFor(t)).add(t);
+			return parts;
+		}
+	}
+}
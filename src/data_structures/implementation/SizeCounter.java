@@ -0,0 +1,30 @@
+package data_structures.implementation;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Element count of a concurrent structure. Updates go to striped cells, so
+ * threads adding and removing at the same time do not all write one cache
+ * line; reading sums the cells.
+ */
+final class SizeCounter {
+	private final LongAdder count = new LongAdder();
+
+	void increment() {
+		count.increment();
+	}
+
+	void decrement() {
+		count.decrement();
+	}
+
+	void add(int n) {
+		count.add(n);
+	}
+
+	int get() {
+		// a remove may be counted just before the add it undoes,
+		// so the sum can briefly drop below zero
+		return (int) Math.max(0, count.sum());
+	}
+}
@@ -0,0 +1,114 @@
+package data_structures.implementation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Node of an unrolled list: up to CAPACITY items, sorted, in one array.
+ * Walking the list looks at one item per node, its last, and the node is
+ * then searched by bisection, so a walk touches about CAPACITY times
+ * fewer nodes than a list with one item per node. The lock is only used
+ * by FineGrainedUnrolledList.
+ */
+class UnrolledNode<T extends Comparable<T>> {
+	static final int CAPACITY = 32;
+	// a node with fewer items is merged with, or refilled from, a neighbour
+	static final int MIN_ITEMS = CAPACITY / 4;
+
+	final Object[] items = new Object[CAPACITY];
+	int count = 0;
+	UnrolledNode<T> next = null;
+	final Lock lock = new ReentrantLock();
+
+	@SuppressWarnings("unchecked")
+	T get(int i) {
+		return (T) items[i];
+	}
+
+	T last() {
+		return get(count - 1);
+	}
+
+	boolean isFull() {
+		return count == CAPACITY;
+	}
+
+	/* index of the first item that is not smaller than t */
+	int search(T t) {
+		int lo = 0, hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (get(mid).compareTo(t) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/* Inserts t in a node that is not full */
+	void insert(T t) {
+		int i = search(t);
+		System.arraycopy(items, i, items, i + 1, count - i);
+		items[i] = t;
+		count++;
+	}
+
+	/* Removes one t; false if there was none */
+	boolean remove(T t) {
+		int i = search(t);
+		if (i == count || get(i).compareTo(t) != 0)
+			return false;
+		System.arraycopy(items, i + 1, items, i, count - i - 1);
+		items[--count] = null;
+		return true;
+	}
+
+	boolean contains(T t) {
+		int i = search(t);
+		return i < count && get(i).compareTo(t) == 0;
+	}
+
+	/* Moves the upper half of a full node to a new node, linked after this one */
+	UnrolledNode<T> split() {
+		UnrolledNode<T> upper = new UnrolledNode<T>();
+		int half = count / 2;
+		upper.count = count - half;
+		System.arraycopy(items, half, upper.items, 0, upper.count);
+		Arrays.fill(items, half, count, null);
+		count = half;
+		upper.next = next;
+		next = upper;
+		return upper;
+	}
+
+	/*
+	 * Repairs an underflow of this node with its successor: takes over all
+	 * of its items when they fit, and unlinks it, or else takes items from
+	 * its front until both are even. Returns whether the successor was
+	 * unlinked.
+	 */
+	boolean mergeNext() {
+		UnrolledNode<T> successor = next;
+		if (count + successor.count <= CAPACITY) {
+			System.arraycopy(successor.items, 0, items, count, successor.count);
+			count += successor.count;
+			next = successor.next;
+			return true;
+		}
+		int moved = (successor.count - count) / 2;
+		System.arraycopy(successor.items, 0, items, count, moved);
+		count += moved;
+		System.arraycopy(successor.items, moved, successor.items, 0, successor.count - moved);
+		Arrays.fill(successor.items, successor.count - moved, successor.count, null);
+		successor.count -= moved;
+		return false;
+	}
+
+	void addTo(List<T> output) {
+		for (int i = 0; i < count; i++)
+			output.add(get(i));
+	}
+}